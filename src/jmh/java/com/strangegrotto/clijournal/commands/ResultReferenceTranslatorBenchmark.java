@@ -0,0 +1,62 @@
+package com.strangegrotto.clijournal.commands;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures dereferencing against the results of a listing as large as the journal, with a reference to a handful of
+ * results (the common case) and to every hundredth result
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ResultReferenceTranslatorBenchmark {
+    private static final int WIDE_REFERENCE_STRIDE = 100;
+
+    @Param({"1000", "10000", "100000"})
+    public int journalSize;
+
+    private ResultReferenceTranslator translator;
+    private List<String> narrowTokens;
+    private List<String> wideTokens;
+
+    @Setup
+    public void setup() {
+        List<String> resultRefValues = new ArrayList<>(this.journalSize);
+        for (int i = 0; i < this.journalSize; i++) {
+            resultRefValues.add("entry-" + i + "~2020-03-22_18-56-00~tag1,tag2.md");
+        }
+        CommandResultsRecord resultsRecord = new CommandResultsRecord();
+        resultsRecord.observeResult(CommandResultMetadata.of(
+                Optional.empty(),
+                Optional.of(new ListingCmdResults(resultRefValues, ListingCmdResultType.JOURNAL_ENTRY))
+        ));
+        this.translator = new ResultReferenceTranslator(resultsRecord);
+
+        this.narrowTokens = Arrays.asList("@0,1,2", "@" + (this.journalSize - 1), "literal");
+        StringJoiner wideReference = new StringJoiner(",", "@", "");
+        for (int i = 0; i < this.journalSize; i += WIDE_REFERENCE_STRIDE) {
+            wideReference.add(String.valueOf(i));
+        }
+        this.wideTokens = Arrays.asList(wideReference.toString(), "literal");
+    }
+
+    @Benchmark
+    public List<String> dereferenceFewResults() throws ResultReferenceTranslator.ResultDereferenceException {
+        return this.translator.dereferenceTokens(ListingCmdResultType.JOURNAL_ENTRY, this.narrowTokens);
+    }
+
+    @Benchmark
+    public List<String> dereferenceManyResults() throws ResultReferenceTranslator.ResultDereferenceException {
+        return this.translator.dereferenceTokens(ListingCmdResultType.JOURNAL_ENTRY, this.wideTokens);
+    }
+}
@@ -0,0 +1,92 @@
+package com.strangegrotto.clijournal.commands.verbs;
+
+import com.strangegrotto.clijournal.commands.CommandResultMetadata;
+import com.strangegrotto.clijournal.commands.CommandResultsRecord;
+import com.strangegrotto.clijournal.commands.ResultReferenceTranslator;
+import com.strangegrotto.clijournal.entrystore.EntryStore;
+import com.strangegrotto.clijournal.entrystore.FederatedEntryStore;
+import com.strangegrotto.clijournal.entrystore.JournalGenerator;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the entry-listing commands end to end (fetching, sorting, and rendering) as the journal grows, with the
+ * rendered output thrown away so that the terminal isn't what's being measured
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntryListingCommandBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int journalSize;
+
+    private JournalGenerator.Config journalConfig;
+    private JournalGenerator.GeneratedJournal journal;
+    private PrintStream originalStdout;
+    private ListEntriesCommand listCommand;
+    private FindEntriesCommand findCommand;
+
+    @Setup
+    public void setup() throws IOException {
+        // Empty bodies, since nothing here reads them
+        this.journalConfig = new JournalGenerator.Config()
+                .withNumEntries(this.journalSize)
+                .withBodySizes(0, 0);
+        this.journal = JournalGenerator.generate(this.journalConfig);
+        FederatedEntryStore entryStore = new FederatedEntryStore(new EntryStore(this.journal.getDirpath()));
+        this.listCommand = new ListEntriesCommand(entryStore);
+        this.findCommand = new FindEntriesCommand(
+                entryStore,
+                new ResultReferenceTranslator(new CommandResultsRecord())
+        );
+
+        this.originalStdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        System.setOut(this.originalStdout);
+        this.journal.close();
+    }
+
+    /**
+     * Every entry, streamed in order from the store's time index
+     */
+    @Benchmark
+    public CommandResultMetadata listByTime() {
+        return this.listCommand.execute(Collections.emptyList());
+    }
+
+    @Benchmark
+    public CommandResultMetadata listByName() {
+        return this.listCommand.execute(Collections.singletonList("-n"));
+    }
+
+    @Benchmark
+    public CommandResultMetadata listTail() {
+        return this.listCommand.execute(Arrays.asList("--tail", "20"));
+    }
+
+    /**
+     * Search results, which have to be sorted after they're fetched
+     */
+    @Benchmark
+    public CommandResultMetadata findByTag() {
+        return this.findCommand.execute(Arrays.asList("-t", this.journalConfig.getTagVocabulary().get(0)));
+    }
+
+    @Benchmark
+    public CommandResultMetadata findByName() {
+        return this.findCommand.execute(Collections.singletonList(this.journalConfig.getNameWords().get(0)));
+    }
+}
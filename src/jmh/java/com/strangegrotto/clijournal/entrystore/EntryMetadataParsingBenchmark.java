@@ -0,0 +1,96 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single-pass filename parser against the original split()- and exception-based one, over a mix of
+ * filenames in each accepted timestamp format and without a timestamp, and measures formatting the parsed metadata
+ * back into filenames
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntryMetadataParsingBenchmark {
+    private static final int NUM_FILENAMES = 1024;
+    private static final String[] TIMESTAMP_FORMATS = {
+            "%04d-%02d-%02d_%02d-%02d-%02d",
+            "%04d-%02d-%02d_%02d:%02d:%02d",
+            "%04d-%02d-%02d_%02d-%02d",
+            "",
+    };
+
+    private EntryMetadataFormatter formatter;
+    private LegacyEntryMetadataParser legacyParser;
+    private String[] filenames;
+    private EntryMetadata[] metadatas;
+
+    @Setup
+    public void setup() {
+        this.formatter = new EntryMetadataFormatter(
+                EntryStore.METADATA_SEPARATOR,
+                EntryStore.TAG_SEPARATOR,
+                EntryStore.ACCEPTED_TIMESTAMP_FORMATS,
+                EntryStore.PREFERRED_TIMESTAMP_FORMAT
+        );
+        this.legacyParser = new LegacyEntryMetadataParser(
+                EntryStore.METADATA_SEPARATOR,
+                EntryStore.TAG_SEPARATOR,
+                EntryStore.ACCEPTED_TIMESTAMP_FORMATS,
+                EntryStore.PREFERRED_TIMESTAMP_FORMAT
+        );
+
+        Random random = new Random(0);
+        this.filenames = new String[NUM_FILENAMES];
+        for (int i = 0; i < NUM_FILENAMES; i++) {
+            String timestampFormat = TIMESTAMP_FORMATS[i % TIMESTAMP_FORMATS.length];
+            String timestamp = String.format(
+                    timestampFormat,
+                    2000 + random.nextInt(25),
+                    1 + random.nextInt(12),
+                    1 + random.nextInt(28),
+                    random.nextInt(24),
+                    random.nextInt(60),
+                    random.nextInt(60)
+            );
+            this.filenames[i] = String.join(
+                    EntryStore.METADATA_SEPARATOR,
+                    "entry-" + i,
+                    timestamp,
+                    String.join(EntryStore.TAG_SEPARATOR, "tag" + random.nextInt(20), "tag" + random.nextInt(20))
+            ) + ".md";
+        }
+
+        this.metadatas = new EntryMetadata[NUM_FILENAMES];
+        for (int i = 0; i < NUM_FILENAMES; i++) {
+            this.metadatas[i] = this.formatter.parseMetadata(this.filenames[i]);
+        }
+    }
+
+    @Benchmark
+    public void parseMetadata(Blackhole blackhole) {
+        for (String filename : this.filenames) {
+            blackhole.consume(this.formatter.parseMetadata(filename));
+        }
+    }
+
+    @Benchmark
+    public void parseMetadataLegacy(Blackhole blackhole) {
+        for (String filename : this.filenames) {
+            blackhole.consume(this.legacyParser.parseMetadata(filename));
+        }
+    }
+
+    @Benchmark
+    public void formatMetadata(Blackhole blackhole) {
+        for (EntryMetadata metadata : this.metadatas) {
+            blackhole.consume(this.formatter.formatMetadata(metadata));
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import com.google.common.collect.Range;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures indexing and the basic queries of {@link EntryStore} as the journal grows
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EntryStoreBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int journalSize;
+
+    private JournalGenerator.Config journalConfig;
+    private JournalGenerator.GeneratedJournal journal;
+    private EntryStore entryStore;
+    private long nextDirModifiedMillis;
+
+    @Setup
+    public void setup() throws IOException {
+        // Empty bodies, since nothing here reads them
+        this.journalConfig = new JournalGenerator.Config()
+                .withNumEntries(this.journalSize)
+                .withBodySizes(0, 0);
+        this.journal = JournalGenerator.generate(this.journalConfig);
+        this.entryStore = new EntryStore(this.journal.getDirpath());
+        // Far enough in the past that the store trusts the modification time
+        this.nextDirModifiedMillis = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        this.journal.close();
+    }
+
+    /**
+     * Startup without any cached state, which lists and parses every filename
+     */
+    @Benchmark
+    public EntryStore coldIndex() throws IOException {
+        return new EntryStore(this.journal.getDirpath());
+    }
+
+    /**
+     * A reindex after the journal directory has changed, which lists the directory but reuses the parsed metadata
+     */
+    @Benchmark
+    public EntryStore reindex() throws IOException {
+        Files.setLastModifiedTime(this.journal.getDirpath(), FileTime.fromMillis(this.nextDirModifiedMillis--));
+        this.entryStore.reindex();
+        return this.entryStore;
+    }
+
+    @Benchmark
+    public Set<Entry> getByName() {
+        return this.entryStore.getByName(this.journalConfig.getNameWords().get(0));
+    }
+
+    @Benchmark
+    public Set<Entry> getByTag() {
+        return this.entryStore.getByTag(this.journalConfig.getTagVocabulary().get(0));
+    }
+
+    @Benchmark
+    public Set<Entry> getAllEntries() {
+        return this.entryStore.getAllEntries();
+    }
+
+    @Benchmark
+    public List<Entry> getByTimeRange() {
+        return this.entryStore.getByTimeRange(Range.all());
+    }
+}
@@ -3,71 +3,188 @@
  */
 package com.strangegrotto.clijournal;
 
-import com.google.common.collect.Sets;
+import com.google.common.hash.Hashing;
+import com.strangegrotto.clijournal.batch.BatchRunner;
 import com.strangegrotto.clijournal.commands.CommandParser;
 import com.strangegrotto.clijournal.commands.CommandResultMetadata;
 import com.strangegrotto.clijournal.commands.CommandResultsRecord;
+import com.strangegrotto.clijournal.commands.CommandTokenizer;
 import com.strangegrotto.clijournal.commands.ResultReferenceTranslator;
 import com.strangegrotto.clijournal.commands.verbs.*;
-import com.strangegrotto.clijournal.entrystore.EntryStore;
+import com.strangegrotto.clijournal.daemon.DaemonServer;
+import com.strangegrotto.clijournal.entrystore.FederatedEntryStore;
+import com.strangegrotto.clijournal.metrics.AllocationCounter;
+import com.strangegrotto.clijournal.metrics.MetricsRegistry;
+import com.strangegrotto.clijournal.metrics.PhaseProfile;
 
 import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.List;
-import java.util.Optional;
-import java.util.Set;
+import java.util.*;
 
 public class Main {
     private static final Path CONFIG_FILEPATH = Paths.get(
             System.getProperty("user.home"),
             ".clijournal"
     ).toAbsolutePath();
-    private static final Set<String> BLACKLISTED_FILENAME_PATTERNS = Sets.newHashSet(
-            ".*\\.swp",
-            "^\\.git"
-    );
+    // Directory where the CLI keeps state between runs (e.g. caches), with a subdirectory per journal
+    private static final Path STATE_DIRPATH = Paths.get(
+            System.getProperty("user.home"),
+            ".clijournal.d"
+    ).toAbsolutePath();
+    private static final String JOURNAL_STATE_DIRNAME = "journals";
+    // Config lines can name their journal with '<name>=<path>'
+    private static final String JOURNAL_NAME_SEPARATOR = "=";
+    private static final String CONFIG_COMMENT_PREFIX = "#";
+    // Where a running daemon publishes how clients can reach it
+    private static final String DAEMON_ENDPOINT_FILENAME = "daemon";
+    // These must come before any command args
+    private static final String PROFILE_STARTUP_FLAG = "--profile-startup";
+    private static final String DAEMON_FLAG = "--daemon";
+    private static final String BATCH_FLAG = "--batch";
+    private static final Set<String> STARTUP_FLAGS = Set.of(PROFILE_STARTUP_FLAG, DAEMON_FLAG, BATCH_FLAG);
 
     public static void main(String[] args) throws InterruptedException {
+        long jvmStartToMainMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        PhaseProfile startupProfile = new PhaseProfile();
+        // Everything the main thread allocated before main is JVM startup (e.g. class loading)
+        startupProfile.add(
+                "JVM start to main",
+                jvmStartToMainMillis * 1_000_000,
+                AllocationCounter.currentThreadAllocatedBytes()
+        );
+        Set<String> startupFlags = new HashSet<>();
+        int numStartupFlags = 0;
+        while (numStartupFlags < args.length && STARTUP_FLAGS.contains(args[numStartupFlags])) {
+            startupFlags.add(args[numStartupFlags]);
+            numStartupFlags++;
+        }
+        args = Arrays.copyOfRange(args, numStartupFlags, args.length);
+        if (startupFlags.contains(DAEMON_FLAG) && args.length > 0) {
+            System.out.println("Commands can't be given with " + DAEMON_FLAG + "; run them through the client instead");
+            System.exit(1);
+        }
+        if (startupFlags.contains(BATCH_FLAG) && (startupFlags.contains(DAEMON_FLAG) || args.length > 1)) {
+            System.out.println(BATCH_FLAG + " takes at most one script file, and can't be used with " + DAEMON_FLAG);
+            System.exit(1);
+        }
+
         BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+        // With no script file, the script is read from stdin
+        BufferedReader scriptReader = reader;
+        if (startupFlags.contains(BATCH_FLAG) && args.length == 1) {
+            try {
+                scriptReader = Files.newBufferedReader(Paths.get(args[0]), StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                System.out.println("Fatal error opening script: " + e.getMessage());
+                System.exit(1);
+            }
+        }
 
-        Path journalDirpath = null;
+        Map<String, Path> journalDirpaths = null;
         try {
-            journalDirpath = getJournalDirpathFromConfig(reader);
+            // A batch script may be on stdin, which onboarding mustn't mistake for the user's answers
+            journalDirpaths = getJournalDirpathsFromConfig(reader, !startupFlags.contains(BATCH_FLAG));
         } catch (IOException e) {
             System.out.println("Fatal error reading config: " + e.getMessage());
             System.exit(1);
         }
+        startupProfile.mark("config read");
 
-        EntryStore entryStore = null;
+        MetricsRegistry metrics = new MetricsRegistry();
+        FederatedEntryStore entryStore;
         try {
-            entryStore = new EntryStore(journalDirpath, BLACKLISTED_FILENAME_PATTERNS);
+            // With several journals, they're indexed in parallel
+            entryStore = FederatedEntryStore.open(
+                    journalDirpaths,
+                    journalDirpath -> Optional.of(getJournalStateDirpath(journalDirpath)),
+                    metrics
+            );
         } catch (IOException e) {
             System.out.println("Fatal error initializing entry store: " + e.getMessage());
             System.exit(1);
+            return;
         }
+        startupProfile.mark("entry store construction");
+        startupProfile.addSubphases(entryStore.getLastReindexProfile());
+
+        try {
+            entryStore.watchForChanges();
+        } catch (IOException e) {
+            // Not fatal; the user just won't see changes made outside the CLI until it's restarted
+            System.out.println("Warning: couldn't watch the journal directory for changes: " + e.getMessage());
+        }
+        startupProfile.mark("file watch registration");
 
         CommandResultsRecord resultsRecord = new CommandResultsRecord();
         ResultReferenceTranslator referenceTranslator = new ResultReferenceTranslator(resultsRecord);
-        CommandParser commandParser = new CommandParser(resultsRecord).registerCommand(
-                new ListEntriesCommand(entryStore)
+        // Commands are only constructed when they're first run
+        CommandParser commandParser = new CommandParser(resultsRecord, metrics).registerCommand(
+                ListEntriesCommand.ALIAS,
+                ListEntriesCommand.HELP,
+                () -> new ListEntriesCommand(entryStore)
+        ).registerCommand(
+                ListTagsCommand.ALIAS,
+                ListTagsCommand.HELP,
+                () -> new ListTagsCommand(entryStore)
+        ).registerCommand(
+                FindEntriesCommand.ALIAS,
+                FindEntriesCommand.HELP,
+                () -> new FindEntriesCommand(entryStore, referenceTranslator)
         ).registerCommand(
-                new ListTagsCommand(entryStore)
+                ExplainCommand.ALIAS,
+                ExplainCommand.HELP,
+                () -> new ExplainCommand(entryStore)
         ).registerCommand(
-                new FindEntriesCommand(entryStore, referenceTranslator)
+                VimCommand.ALIAS,
+                VimCommand.HELP,
+                () -> new VimCommand(entryStore, referenceTranslator)
         ).registerCommand(
-                new VimCommand(entryStore, referenceTranslator)
+                NewEntryCommand.ALIAS,
+                NewEntryCommand.HELP,
+                () -> new NewEntryCommand(entryStore, referenceTranslator)
         ).registerCommand(
-                new NewEntryCommand(entryStore, referenceTranslator)
+                ChromeCommand.ALIAS,
+                ChromeCommand.HELP,
+                () -> new ChromeCommand(entryStore, referenceTranslator)
         ).registerCommand(
-                new ChromeCommand(entryStore, referenceTranslator)
+                StatsCommand.ALIAS,
+                StatsCommand.HELP,
+                () -> new StatsCommand(metrics)
         ).registerCommand(
-                new QuitCommand()
+                QuitCommand.ALIAS,
+                QuitCommand.HELP,
+                QuitCommand::new
         );
+        startupProfile.mark("command registration");
+        if (startupFlags.contains(PROFILE_STARTUP_FLAG)) {
+            System.out.print(startupProfile.format());
+        }
 
-        List<String> endArgs = runInputLoop(reader, commandParser, args);
+        if (startupFlags.contains(DAEMON_FLAG)) {
+            try {
+                new DaemonServer(commandParser, STATE_DIRPATH.resolve(DAEMON_ENDPOINT_FILENAME)).run();
+            } catch (IOException e) {
+                System.out.println("Fatal error running daemon: " + e.getMessage());
+                System.exit(1);
+            }
+            System.exit(0);
+        }
+
+        List<String> endArgs;
+        int exitStatus = BatchRunner.SUCCESS_STATUS;
+        if (startupFlags.contains(BATCH_FLAG)) {
+            BatchRunner.Outcome outcome = new BatchRunner(commandParser).run(scriptReader);
+            endArgs = outcome.getEndArgs();
+            if (outcome.getNumFailed() > 0) {
+                exitStatus = BatchRunner.FAILURE_STATUS;
+            }
+        } else {
+            endArgs = runInputLoop(reader, commandParser, args);
+        }
         if (endArgs.size() > 0) {
             Process process = null;
             try {
@@ -78,6 +195,9 @@ public class Main {
             }
             process.waitFor();
         }
+        if (exitStatus != BatchRunner.SUCCESS_STATUS) {
+            System.exit(exitStatus);
+        }
     }
 
     /**
@@ -107,7 +227,12 @@ public class Main {
                     break;
                 }
 
-                tokenizedInput = Arrays.asList(userInput.trim().split("\\s+"));
+                try {
+                    tokenizedInput = CommandTokenizer.tokenize(userInput);
+                } catch (IllegalArgumentException e) {
+                    System.out.println("Error: " + e.getMessage());
+                    continue;
+                }
                 if (tokenizedInput.size() == 0) {
                     continue;
                 }
@@ -124,19 +249,42 @@ public class Main {
     }
 
 
+    /**
+     * Gets the directory where state about the given journal will be stored between runs
+     * @param journalDirpath Journal to get the state directory for
+     * @return Path to the journal's state directory, which may not exist yet
+     */
+    private static Path getJournalStateDirpath(Path journalDirpath) {
+        String journalKey = Hashing.sha256()
+                .hashString(journalDirpath.toAbsolutePath().toString(), StandardCharsets.UTF_8)
+                .toString();
+        return STATE_DIRPATH.resolve(JOURNAL_STATE_DIRNAME).resolve(journalKey);
+    }
+
     // TODO Make this have a nice intro flow where the user can set the journal dirpath
 
     /**
-     * Gets the user's journal dirpath if one is configured, and runs them through the onboarding flow if not
+     * Gets the user's journal dirpaths if any are configured, and runs them through the onboarding flow if not. Each
+     * line of the config is a journal, either as a path (in which case the journal is named after its directory) or
+     * as '<name>=<path>'.
      * @param reader In case the user doesn't have a journal config set up, use this BufferedReader to read their
      *               input as we take them through the onboarding flow
-     * @throws IOException if a unrecoverable error in reading or writing the config file occurred
-     * @return
+     * @param interactive Whether the onboarding flow can be run; if not, a missing or invalid config is an error
+     * @throws IOException if a unrecoverable error in reading or writing the config file occurred, if one of
+     *  several configured journals isn't valid (which would be destructive to fix by re-running the onboarding), or if
+     *  the config needs fixing but onboarding can't be run
+     * @return Name of each journal -> its dirpath, in the order they're configured in
      */
-    private static Path getJournalDirpathFromConfig(BufferedReader reader) throws IOException {
-        Path journalDirpath = null;
-        while (null == journalDirpath) {
+    private static Map<String, Path> getJournalDirpathsFromConfig(
+            BufferedReader reader,
+            boolean interactive) throws IOException {
+        Map<String, Path> journalDirpaths = null;
+        while (null == journalDirpaths) {
             if (!Files.isRegularFile(CONFIG_FILEPATH)) {
+                if (!interactive) {
+                    throw new IOException("No config file at '" + CONFIG_FILEPATH + "'; run the CLI without "
+                            + BATCH_FLAG + " once to set up a journal");
+                }
                 System.out.println("No config file detected; running onboarding...");
                 runOnboardingWorkflow(reader);
                 continue;
@@ -149,23 +297,80 @@ public class Main {
                 throw new IOException("Failed to read config filepath!");
             }
 
-            if (configLines.size() == 0) {
+            List<String> journalLines = new ArrayList<>();
+            for (String configLine : configLines) {
+                String trimmedLine = configLine.trim();
+                if (!trimmedLine.isEmpty() && !trimmedLine.startsWith(CONFIG_COMMENT_PREFIX)) {
+                    journalLines.add(trimmedLine);
+                }
+            }
+
+            if (!interactive && (journalLines.size() == 0
+                    || (journalLines.size() == 1 && !Files.isDirectory(parseJournalDirpath(journalLines.get(0)))))) {
+                throw new IOException("Config file '" + CONFIG_FILEPATH + "' doesn't name a journal directory; run "
+                        + "the CLI without " + BATCH_FLAG + " once to set up a journal");
+            }
+
+            if (journalLines.size() == 0) {
                 System.out.println("Config file found, but was empty; please enter the *absolute path* to a directory");
                 System.out.println(" to use as your journal.");
                 runJournalConfigurationWorkflow(reader);
                 continue;
             }
 
-            Path tentativeJournalDirpath = Paths.get(configLines.get(0));
-            if (!Files.isDirectory(tentativeJournalDirpath)) {
+            if (journalLines.size() == 1 && !Files.isDirectory(parseJournalDirpath(journalLines.get(0)))) {
                 System.out.println("Path in config file is not a directory; please enter the *absolute path* to a directory");
                 System.out.println(" to use as your journal.");
                 runJournalConfigurationWorkflow(reader);
                 continue;
             }
-            journalDirpath = tentativeJournalDirpath;
+
+            Map<String, Path> tentativeJournalDirpaths = new LinkedHashMap<>();
+            for (String journalLine : journalLines) {
+                Path journalDirpath = parseJournalDirpath(journalLine);
+                String journalName = parseJournalName(journalLine);
+                if (!Files.isDirectory(journalDirpath)) {
+                    throw new IOException("Path '" + journalDirpath + "' of journal '" + journalName + "' in config "
+                            + "file '" + CONFIG_FILEPATH + "' is not a directory");
+                }
+                if (tentativeJournalDirpaths.put(journalName, journalDirpath) != null) {
+                    throw new IOException("More than one journal in config file '" + CONFIG_FILEPATH + "' is named '"
+                            + journalName + "'; name them differently with '<name>" + JOURNAL_NAME_SEPARATOR
+                            + "<path>'");
+                }
+            }
+            journalDirpaths = tentativeJournalDirpaths;
+        }
+        return journalDirpaths;
+    }
+
+    /**
+     * @param journalLine Line of the config file, as either '<path>' or '<name>=<path>'
+     * @return The name before the separator if there is one, and otherwise the name of the journal's directory
+     */
+    private static String parseJournalName(String journalLine) {
+        int separatorIndex = journalLine.indexOf(JOURNAL_NAME_SEPARATOR);
+        if (isJournalName(journalLine, separatorIndex)) {
+            return journalLine.substring(0, separatorIndex).trim();
         }
-        return journalDirpath;
+        Path fileName = parseJournalDirpath(journalLine).getFileName();
+        return fileName == null ? journalLine : fileName.toString();
+    }
+
+    private static Path parseJournalDirpath(String journalLine) {
+        int separatorIndex = journalLine.indexOf(JOURNAL_NAME_SEPARATOR);
+        if (isJournalName(journalLine, separatorIndex)) {
+            return Paths.get(journalLine.substring(separatorIndex + 1).trim());
+        }
+        return Paths.get(journalLine);
+    }
+
+    /**
+     * Paths can contain the name separator too, but a name can't contain a path separator, which is how the two
+     * are told apart
+     */
+    private static boolean isJournalName(String journalLine, int separatorIndex) {
+        return separatorIndex > 0 && !journalLine.substring(0, separatorIndex).contains(File.separator);
     }
 
     /**
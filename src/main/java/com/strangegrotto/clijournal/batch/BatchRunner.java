@@ -0,0 +1,179 @@
+package com.strangegrotto.clijournal.batch;
+
+import com.strangegrotto.clijournal.commands.CommandParser;
+import com.strangegrotto.clijournal.commands.CommandResultMetadata;
+import com.strangegrotto.clijournal.commands.CommandTokenizer;
+
+import java.io.*;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Runs a script of commands, one per line, without prompting, for driving the journal from automation. Lines are
+ * read and tokenized (as at the prompt) on a separate thread while earlier commands run, and the commands' output is fully buffered.
+ * References to previous results work across lines just as they do at the prompt. After each command, a status
+ * line of '<line number> TAB <exit status> TAB <command>' goes to stderr (exit status 0 for success, 1 for failure),
+ * so stdout holds only the commands' output.
+ */
+public class BatchRunner {
+    public static final int SUCCESS_STATUS = 0;
+    public static final int FAILURE_STATUS = 1;
+    private static final String COMMENT_PREFIX = "#";
+    // Lines read ahead of the running command
+    private static final int READ_AHEAD_LINES = 1024;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    private static final ScriptLine END_OF_SCRIPT = new ScriptLine(-1, "", List.of(), Optional.empty());
+
+    private final CommandParser commandParser;
+
+    /**
+     * @param commandParser Parser to run the script's commands with
+     */
+    public BatchRunner(CommandParser commandParser) {
+        this.commandParser = commandParser;
+    }
+
+    private static class ScriptLine {
+        private final int lineNumber;
+        private final String text;
+        private final List<String> tokens;
+        // Set if the line couldn't be tokenized, in which case it fails without being run
+        private final Optional<String> tokenizeErrorOpt;
+
+        private ScriptLine(int lineNumber, String text, List<String> tokens, Optional<String> tokenizeErrorOpt) {
+            this.lineNumber = lineNumber;
+            this.text = text;
+            this.tokens = tokens;
+            this.tokenizeErrorOpt = tokenizeErrorOpt;
+        }
+    }
+
+    public static class Outcome {
+        private final int numFailed;
+        private final List<String> endArgs;
+
+        private Outcome(int numFailed, List<String> endArgs) {
+            this.numFailed = numFailed;
+            this.endArgs = endArgs;
+        }
+
+        /**
+         * @return Number of commands that failed (plus one if the script couldn't be fully read)
+         */
+        public int getNumFailed() {
+            return numFailed;
+        }
+
+        /**
+         * @return Args to end the CLI with, if a command ended the session (e.g. 'vim'), or empty
+         */
+        public List<String> getEndArgs() {
+            return endArgs;
+        }
+    }
+
+    /**
+     * Runs the script's commands in order until the script ends or a command ends the session (e.g. 'quit'), in which
+     * case the rest of the script is skipped. Blank lines and lines starting with '#' are skipped.
+     * @param script Reader of the script, which will be read to the end on a background thread
+     * @return Outcome of the run
+     */
+    public Outcome run(BufferedReader script) {
+        BlockingQueue<ScriptLine> lines = new ArrayBlockingQueue<>(READ_AHEAD_LINES);
+        IOException[] readError = new IOException[1];
+        Thread readerThread = new Thread(() -> readScript(script, lines, readError), "batch-script-reader");
+        // A command that ends the session leaves the rest of the script unread
+        readerThread.setDaemon(true);
+        readerThread.start();
+
+        PrintStream originalOut = System.out;
+        PrintStream bufferedOut = new PrintStream(
+                new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), OUTPUT_BUFFER_SIZE),
+                false
+        );
+        System.setOut(bufferedOut);
+        int numFailed = 0;
+        Optional<List<String>> endArgsOpt = Optional.empty();
+        try {
+            ScriptLine line = takeLine(lines);
+            while (line != END_OF_SCRIPT && !endArgsOpt.isPresent()) {
+                CommandResultMetadata result;
+                try {
+                    if (line.tokenizeErrorOpt.isPresent()) {
+                        System.out.println("Error: " + line.tokenizeErrorOpt.get());
+                        result = CommandResultMetadata.failure();
+                    } else {
+                        result = this.commandParser.parse(line.tokens);
+                    }
+                } catch (RuntimeException e) {
+                    // One bad command shouldn't stop the rest of the script
+                    System.out.println("Error running command: " + e.getMessage());
+                    result = CommandResultMetadata.failure();
+                }
+                if (!result.isSuccess()) {
+                    numFailed++;
+                }
+                System.err.println(String.format(
+                        "%d\t%d\t%s",
+                        line.lineNumber,
+                        result.isSuccess() ? SUCCESS_STATUS : FAILURE_STATUS,
+                        line.text
+                ));
+                endArgsOpt = result.getEndArgs();
+                line = takeLine(lines);
+            }
+        } finally {
+            bufferedOut.flush();
+            System.setOut(originalOut);
+        }
+
+        // The reader thread sets the error before queueing the end of the script, so it's visible here
+        if (!endArgsOpt.isPresent() && readError[0] != null) {
+            System.err.println("Error reading script: " + readError[0].getMessage());
+            numFailed++;
+        }
+        return new Outcome(numFailed, endArgsOpt.orElse(List.of()));
+    }
+
+    private static void readScript(BufferedReader script, BlockingQueue<ScriptLine> lines, IOException[] readError) {
+        try {
+            int lineNumber = 0;
+            String text;
+            while ((text = script.readLine()) != null) {
+                lineNumber++;
+                String trimmed = text.trim();
+                if (trimmed.isEmpty() || trimmed.startsWith(COMMENT_PREFIX)) {
+                    continue;
+                }
+                ScriptLine line;
+                try {
+                    line = new ScriptLine(lineNumber, trimmed, CommandTokenizer.tokenize(trimmed), Optional.empty());
+                } catch (IllegalArgumentException e) {
+                    line = new ScriptLine(lineNumber, trimmed, List.of(), Optional.of(e.getMessage()));
+                }
+                lines.put(line);
+            }
+        } catch (IOException e) {
+            readError[0] = e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        try {
+            lines.put(END_OF_SCRIPT);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static ScriptLine takeLine(BlockingQueue<ScriptLine> lines) {
+        try {
+            return lines.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return END_OF_SCRIPT;
+        }
+    }
+}
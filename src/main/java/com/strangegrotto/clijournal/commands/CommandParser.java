@@ -3,17 +3,51 @@ package com.strangegrotto.clijournal.commands;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.Sets;
 import com.strangegrotto.clijournal.commands.verbs.Command;
+import com.strangegrotto.clijournal.metrics.MetricsRegistry;
 
 import java.util.*;
+import java.util.function.Supplier;
 
 public class CommandParser {
     private static final int HELP_ALIAS_PAD_WIDTH = 15;
-    private static final Comparator<Map.Entry<String, Command>> ALIAS_COMPARATOR = Comparator.comparing(
+    private static final Comparator<Map.Entry<String, Registration>> ALIAS_COMPARATOR = Comparator.comparing(
             entry -> entry.getKey()
     );
 
     private final CommandResultsRecord resultsRecord;
-    private final Map<String, Command> aliases;
+    private final MetricsRegistry metrics;
+    private final Map<String, Registration> aliases;
+
+    /**
+     * A registered command, which isn't constructed until it's first run
+     */
+    private static class Registration {
+        private final String alias;
+        private final String helpString;
+        private final Supplier<Command> commandFactory;
+        private Command command;  // Null until first run
+
+        private Registration(String alias, String helpString, Supplier<Command> commandFactory) {
+            this.alias = alias;
+            this.helpString = helpString;
+            this.commandFactory = commandFactory;
+            this.command = null;
+        }
+
+        private Command getCommand() {
+            if (this.command == null) {
+                Command command = this.commandFactory.get();
+                Preconditions.checkState(
+                        command.getAlias().trim().toLowerCase().equals(this.alias),
+                        "Command registered as '%s' has alias '%s'",
+                        this.alias,
+                        command.getAlias()
+                );
+                this.command = command;
+            }
+            return this.command;
+        }
+    }
 
     private class HelpCommand implements Command {
 
@@ -25,14 +59,14 @@ public class CommandParser {
         @Override
         public CommandResultMetadata execute(List<String> args) {
             System.out.println();
-            List<Map.Entry<String, Command>> entryList = new ArrayList<>(CommandParser.this.aliases.entrySet());
+            List<Map.Entry<String, Registration>> entryList = new ArrayList<>(CommandParser.this.aliases.entrySet());
             entryList.sort(ALIAS_COMPARATOR);
 
-            for (Map.Entry<String, Command> entry : entryList) {
+            for (Map.Entry<String, Registration> entry : entryList) {
                 String outStr = String.format(
                         "  %-" + HELP_ALIAS_PAD_WIDTH + "s%s",
                         entry.getKey(),
-                        entry.getValue().getHelpString()
+                        entry.getValue().helpString
                 );
                 System.out.println(outStr);
             }
@@ -45,20 +79,39 @@ public class CommandParser {
         }
     }
 
-    public CommandParser(CommandResultsRecord resultsRecord) {
+    /**
+     * @param resultsRecord Record to store the results of listing commands in, for later reference
+     * @param metrics Registry to record every command's latency, allocation, and number of results in
+     */
+    public CommandParser(CommandResultsRecord resultsRecord, MetricsRegistry metrics) {
         this.resultsRecord = resultsRecord;
+        this.metrics = metrics;
         this.aliases = new HashMap<>();
         this.registerCommand(new HelpCommand());
     }
 
     public CommandParser registerCommand(Command command) {
-        String cleanedAlias = command.getAlias().trim().toLowerCase();
+        return this.registerCommand(command.getAlias(), command.getHelpString(), () -> command);
+    }
+
+    /**
+     * Registers a command without constructing it, so that only the commands that actually get run pay for their
+     * construction (e.g. building their argument parsers)
+     * @param alias Alias that the command will be run by, which must match the constructed command's alias
+     * @param helpString Help string to show in the command listing
+     * @param commandFactory Factory for the command, called the first time the command is run
+     */
+    public CommandParser registerCommand(
+            String alias,
+            String helpString,
+            Supplier<Command> commandFactory) {
+        String cleanedAlias = alias.trim().toLowerCase();
         Preconditions.checkState(
                 !this.aliases.containsKey(cleanedAlias),
                 "Alias '%s' is already registered",
                 cleanedAlias
         );
-        this.aliases.put(cleanedAlias, command);
+        this.aliases.put(cleanedAlias, new Registration(cleanedAlias, helpString, commandFactory));
         return this;
     }
 
@@ -71,14 +124,18 @@ public class CommandParser {
 
         CommandResultMetadata result;
         if (this.aliases.containsKey(alias)) {
-            result = this.aliases.get(alias).execute(remainingTokens);
+            MetricsRegistry.Sample sample = this.metrics.start("command." + alias);
+            result = this.aliases.get(alias).getCommand().execute(remainingTokens);
+            sample.finish(result.getListingCmdResults()
+                    .map(listingResults -> (long) listingResults.getResultRefValues().size())
+                    .orElse(-1L));
         } else {
             String out = String.format(
                     "Unknown command '%s'",
                     alias
             );
             System.out.println(out);
-            result = CommandResultMetadata.empty();
+            result = CommandResultMetadata.failure();
         }
         this.resultsRecord.observeResult(result);
         return result;
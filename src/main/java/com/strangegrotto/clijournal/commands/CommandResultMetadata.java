@@ -9,23 +9,41 @@ import java.util.Optional;
 public class CommandResultMetadata {
     private final Optional<List<String>> endArgs;
     private final Optional<ListingCmdResults> listingCmdResults;
+    private final boolean success;
 
-    private CommandResultMetadata(Optional<List<String>> endArgs, Optional<ListingCmdResults> listingCmdResults) {
+    private CommandResultMetadata(
+            Optional<List<String>> endArgs,
+            Optional<ListingCmdResults> listingCmdResults,
+            boolean success) {
         this.endArgs = endArgs;
         this.listingCmdResults = listingCmdResults;
+        this.success = success;
     }
 
     public static CommandResultMetadata empty() {
         return new CommandResultMetadata(
                 Optional.empty(),
-                Optional.empty()
+                Optional.empty(),
+                true
+        );
+    }
+
+    /**
+     * @return Result of a command that couldn't do what it was asked (e.g. because of bad args), having already told
+     *  the user why
+     */
+    public static CommandResultMetadata failure() {
+        return new CommandResultMetadata(
+                Optional.empty(),
+                Optional.empty(),
+                false
         );
     }
 
     public static CommandResultMetadata of(
             Optional<List<String>> endArgs,
             Optional<ListingCmdResults> listingCmdResults) {
-        return new CommandResultMetadata(endArgs, listingCmdResults);
+        return new CommandResultMetadata(endArgs, listingCmdResults, true);
     }
 
     public Optional<List<String>> getEndArgs() {
@@ -35,4 +53,8 @@ public class CommandResultMetadata {
     public Optional<ListingCmdResults> getListingCmdResults() {
         return listingCmdResults;
     }
+
+    public boolean isSuccess() {
+        return success;
+    }
 }
@@ -0,0 +1,58 @@
+package com.strangegrotto.clijournal.commands;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a line of user input (at the prompt or in a batch script) into command tokens
+ */
+public class CommandTokenizer {
+    private static final String QUOTE_CHARS = "'\"";
+
+    private CommandTokenizer() {}
+
+    /**
+     * Splits the line on whitespace, except inside single or double quotes, which are removed (so
+     * "find -t 'work &amp; !draft'" gives the tag expression as one token). Backslashes are kept as-is, so they reach
+     * the command (e.g. to escape a tag expression's operators).
+     * @param line Line to split
+     * @return Tokens of the line, which will be empty if the line is blank
+     * @throws IllegalArgumentException if a quote is never closed
+     */
+    public static List<String> tokenize(String line) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        // Distinguishes an empty quoted token (e.g. '') from no token at all
+        boolean inToken = false;
+        char openQuote = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (openQuote != 0) {
+                if (c == openQuote) {
+                    openQuote = 0;
+                } else {
+                    token.append(c);
+                }
+            } else if (QUOTE_CHARS.indexOf(c) >= 0) {
+                openQuote = c;
+                inToken = true;
+            } else if (Character.isWhitespace(c)) {
+                if (inToken) {
+                    tokens.add(token.toString());
+                    token.setLength(0);
+                    inToken = false;
+                }
+            } else {
+                token.append(c);
+                inToken = true;
+            }
+        }
+        if (openQuote != 0) {
+            throw new IllegalArgumentException("Missing closing " + openQuote + " in input");
+        }
+        if (inToken) {
+            tokens.add(token.toString());
+        }
+        return tokens;
+    }
+}
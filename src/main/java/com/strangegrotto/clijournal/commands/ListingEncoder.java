@@ -0,0 +1,432 @@
+package com.strangegrotto.clijournal.commands;
+
+import com.google.common.base.Preconditions;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+/**
+ * Writes listing results as machine-readable records, one at a time as they're produced. Field values are escaped
+ * and UTF-8 encoded straight into a byte buffer, without building a String per record, so that exporting a huge
+ * journal is limited by the output rather than by formatting, and uses the same memory however many records there are.
+ * Records aren't guaranteed to be written until {@link #flush()} is called.
+ */
+public abstract class ListingEncoder {
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+    // Longest UTF-8 encoding of a single char, or of the escape sequence that replaces it
+    private static final int MAX_CHAR_BYTES = 6;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream out;
+    private final byte[] buffer;
+    private int bufferLength;
+    // Number of fields written to the current record so far
+    protected int fieldIndex;
+
+    private ListingEncoder(OutputStream out) {
+        this.out = out;
+        this.buffer = new byte[OUTPUT_BUFFER_SIZE];
+        this.bufferLength = 0;
+        this.fieldIndex = 0;
+    }
+
+    /**
+     * @param format Format to write the records in (must not be {@link ListingFormat#HUMAN}, which
+     *               {@link ListingRenderer} handles)
+     * @param out Stream to write the records to
+     */
+    public static ListingEncoder create(ListingFormat format, OutputStream out) {
+        switch (format) {
+            case JSONL:
+                return new JsonLinesEncoder(out);
+            case TSV:
+                return new TsvEncoder(out);
+            case NULL:
+                return new NulDelimitedEncoder(out);
+            default:
+                throw new IllegalArgumentException("No encoder for listing format " + format);
+        }
+    }
+
+    public abstract void startRecord();
+
+    /**
+     * @param name Name of the field (only written by formats whose records are self-describing)
+     * @param value Value of the field, or null if it has none
+     * @return This encoder, for chaining
+     */
+    public abstract ListingEncoder field(String name, CharSequence value);
+
+    /**
+     * @param name Name of the field
+     * @param value Timestamp to write in ISO-8601 format (e.g. 2020-03-22T18:56:00), or null if there's none
+     * @return This encoder, for chaining
+     */
+    public abstract ListingEncoder timestampField(String name, LocalDateTime value);
+
+    /**
+     * @param name Name of the field
+     * @param values Values of the field, in the order to write them
+     * @return This encoder, for chaining
+     */
+    public abstract ListingEncoder listField(String name, Collection<String> values);
+
+    public abstract void endRecord();
+
+    /**
+     * Writes out any buffered records
+     * @throws UncheckedIOException if the output couldn't be written
+     */
+    public void flush() {
+        this.flushBuffer();
+        try {
+            this.out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Hook for the format's escaping
+     * @param c Character that's about to be written
+     * @return True if the character was replaced with an escape sequence, false if it should be written as-is
+     */
+    protected abstract boolean writeEscaped(char c);
+
+    protected final void writeByte(int b) {
+        if (this.bufferLength == this.buffer.length) {
+            this.flushBuffer();
+        }
+        this.buffer[this.bufferLength++] = (byte) b;
+    }
+
+    /**
+     * Writes text that's known to be ASCII and to need no escaping (e.g. punctuation and field names)
+     */
+    protected final void writeAscii(String text) {
+        for (int i = 0; i < text.length(); i++) {
+            this.writeByte(text.charAt(i));
+        }
+    }
+
+    /**
+     * Writes text as UTF-8, escaping characters as the format requires
+     */
+    protected final void writeText(CharSequence text) {
+        int length = text.length();
+        for (int i = 0; i < length; i++) {
+            if (this.buffer.length - this.bufferLength < 2 * MAX_CHAR_BYTES) {
+                this.flushBuffer();
+            }
+            char c = text.charAt(i);
+            if (this.writeEscaped(c)) {
+                continue;
+            }
+            if (c < 0x80) {
+                this.buffer[this.bufferLength++] = (byte) c;
+            } else if (c < 0x800) {
+                this.buffer[this.bufferLength++] = (byte) (0xc0 | (c >> 6));
+                this.buffer[this.bufferLength++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, text.charAt(++i));
+                this.buffer[this.bufferLength++] = (byte) (0xf0 | (codePoint >> 18));
+                this.buffer[this.bufferLength++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+                this.buffer[this.bufferLength++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+                this.buffer[this.bufferLength++] = (byte) (0x80 | (codePoint & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                // Unpaired surrogates can't be encoded
+                this.buffer[this.bufferLength++] = '?';
+            } else {
+                this.buffer[this.bufferLength++] = (byte) (0xe0 | (c >> 12));
+                this.buffer[this.bufferLength++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                this.buffer[this.bufferLength++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+
+    protected final void writeTimestamp(LocalDateTime timestamp) {
+        int year = timestamp.getYear();
+        if (year < 0 || year > 9999) {
+            // Rare enough not to be worth hand-formatting
+            this.writeAscii(timestamp.toString());
+            return;
+        }
+        this.writeDigits(year, 4);
+        this.writeByte('-');
+        this.writeDigits(timestamp.getMonthValue(), 2);
+        this.writeByte('-');
+        this.writeDigits(timestamp.getDayOfMonth(), 2);
+        this.writeByte('T');
+        this.writeDigits(timestamp.getHour(), 2);
+        this.writeByte(':');
+        this.writeDigits(timestamp.getMinute(), 2);
+        this.writeByte(':');
+        this.writeDigits(timestamp.getSecond(), 2);
+    }
+
+    /**
+     * Writes a \\u escape for a control character
+     */
+    protected final void writeUnicodeEscape(char c) {
+        this.writeAscii("\\u");
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            this.writeByte(HEX_DIGITS[(c >> shift) & 0xf]);
+        }
+    }
+
+    private void writeDigits(int value, int width) {
+        int divisor = 1;
+        for (int i = 1; i < width; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            this.writeByte('0' + (value / divisor) % 10);
+        }
+    }
+
+    private void flushBuffer() {
+        try {
+            this.out.write(this.buffer, 0, this.bufferLength);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.bufferLength = 0;
+    }
+
+    /**
+     * One JSON object per line, e.g. {"path":"/journal/a.md","tags":["x","y"]}; fields with no value are null
+     */
+    private static class JsonLinesEncoder extends ListingEncoder {
+        private JsonLinesEncoder(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void startRecord() {
+            this.fieldIndex = 0;
+            this.writeByte('{');
+        }
+
+        @Override
+        public ListingEncoder field(String name, CharSequence value) {
+            this.writeName(name);
+            if (value == null) {
+                this.writeAscii("null");
+            } else {
+                this.writeString(value);
+            }
+            return this;
+        }
+
+        @Override
+        public ListingEncoder timestampField(String name, LocalDateTime value) {
+            this.writeName(name);
+            if (value == null) {
+                this.writeAscii("null");
+            } else {
+                this.writeByte('"');
+                this.writeTimestamp(value);
+                this.writeByte('"');
+            }
+            return this;
+        }
+
+        @Override
+        public ListingEncoder listField(String name, Collection<String> values) {
+            this.writeName(name);
+            this.writeByte('[');
+            boolean first = true;
+            for (String value : values) {
+                if (!first) {
+                    this.writeByte(',');
+                }
+                this.writeString(value);
+                first = false;
+            }
+            this.writeByte(']');
+            return this;
+        }
+
+        @Override
+        public void endRecord() {
+            this.writeByte('}');
+            this.writeByte('\n');
+        }
+
+        @Override
+        protected boolean writeEscaped(char c) {
+            switch (c) {
+                case '"':
+                    this.writeAscii("\\\"");
+                    return true;
+                case '\\':
+                    this.writeAscii("\\\\");
+                    return true;
+                case '\n':
+                    this.writeAscii("\\n");
+                    return true;
+                case '\r':
+                    this.writeAscii("\\r");
+                    return true;
+                case '\t':
+                    this.writeAscii("\\t");
+                    return true;
+                default:
+                    if (c < 0x20) {
+                        this.writeUnicodeEscape(c);
+                        return true;
+                    }
+                    return false;
+            }
+        }
+
+        private void writeName(String name) {
+            if (this.fieldIndex > 0) {
+                this.writeByte(',');
+            }
+            this.fieldIndex++;
+            this.writeString(name);
+            this.writeByte(':');
+        }
+
+        private void writeString(CharSequence value) {
+            this.writeByte('"');
+            this.writeText(value);
+            this.writeByte('"');
+        }
+    }
+
+    /**
+     * One line per record with the fields separated by tabs, in the order they were written; tabs, newlines, and
+     * backslashes in values are backslash-escaped, list values are comma-separated, and fields with no value are empty
+     */
+    private static class TsvEncoder extends ListingEncoder {
+        private static final char LIST_SEPARATOR = ',';
+
+        private TsvEncoder(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void startRecord() {
+            this.fieldIndex = 0;
+        }
+
+        @Override
+        public ListingEncoder field(String name, CharSequence value) {
+            this.startField();
+            if (value != null) {
+                this.writeText(value);
+            }
+            return this;
+        }
+
+        @Override
+        public ListingEncoder timestampField(String name, LocalDateTime value) {
+            this.startField();
+            if (value != null) {
+                this.writeTimestamp(value);
+            }
+            return this;
+        }
+
+        @Override
+        public ListingEncoder listField(String name, Collection<String> values) {
+            this.startField();
+            boolean first = true;
+            for (String value : values) {
+                if (!first) {
+                    this.writeByte(LIST_SEPARATOR);
+                }
+                this.writeText(value);
+                first = false;
+            }
+            return this;
+        }
+
+        @Override
+        public void endRecord() {
+            this.writeByte('\n');
+        }
+
+        @Override
+        protected boolean writeEscaped(char c) {
+            switch (c) {
+                case '\t':
+                    this.writeAscii("\\t");
+                    return true;
+                case '\n':
+                    this.writeAscii("\\n");
+                    return true;
+                case '\r':
+                    this.writeAscii("\\r");
+                    return true;
+                case '\\':
+                    this.writeAscii("\\\\");
+                    return true;
+                default:
+                    return false;
+            }
+        }
+
+        private void startField() {
+            if (this.fieldIndex > 0) {
+                this.writeByte('\t');
+            }
+            this.fieldIndex++;
+        }
+    }
+
+    /**
+     * Only the first field of each record, unescaped and followed by a NUL byte (which can't appear in a path)
+     */
+    private static class NulDelimitedEncoder extends ListingEncoder {
+        private NulDelimitedEncoder(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void startRecord() {
+            this.fieldIndex = 0;
+        }
+
+        @Override
+        public ListingEncoder field(String name, CharSequence value) {
+            if (this.fieldIndex++ == 0 && value != null) {
+                this.writeText(value);
+            }
+            return this;
+        }
+
+        @Override
+        public ListingEncoder timestampField(String name, LocalDateTime value) {
+            if (this.fieldIndex++ == 0 && value != null) {
+                this.writeTimestamp(value);
+            }
+            return this;
+        }
+
+        @Override
+        public ListingEncoder listField(String name, Collection<String> values) {
+            Preconditions.checkState(
+                    this.fieldIndex++ > 0,
+                    "A list can't be the first field of a NUL-delimited record"
+            );
+            return this;
+        }
+
+        @Override
+        public void endRecord() {
+            this.writeByte(0);
+        }
+
+        @Override
+        protected boolean writeEscaped(char c) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.strangegrotto.clijournal.commands;
+
+/**
+ * Formats that listing commands can write their results in
+ */
+public enum ListingFormat {
+    // Numbered, padded, and (on a terminal) colored rows, rendered by ListingRenderer
+    HUMAN,
+    // One JSON object per line
+    JSONL,
+    // One line per result, with tab-separated fields
+    TSV,
+    // Each result's first field (e.g. an entry's path) followed by a NUL byte, for e.g. 'xargs -0'
+    NULL
+}
@@ -0,0 +1,182 @@
+package com.strangegrotto.clijournal.commands;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * Renders the numbered rows of a listing command's output. Each row is built in a single reused StringBuilder, padded
+ * and formatted by hand, and written through a large buffer, so that printing huge listings is limited by the
+ * terminal rather than by formatting.
+ * Rows aren't guaranteed to be written until {@link #flush()} is called.
+ */
+public class ListingRenderer {
+    public static final String ANSI_RESET = "\u001B[0m";
+    public static final String ANSI_YELLOW = "\u001B[33m";
+    public static final String ANSI_PURPLE = "\u001B[35m";
+    public static final String ANSI_WHITE = "\u001B[37m";
+
+    private static final int INDEX_PAD_WIDTH = 6;
+    private static final int OUTPUT_BUFFER_SIZE = 64 * 1024;
+
+    // Set while stdout is redirected somewhere that System.console() can't tell us about (e.g. a daemon client)
+    private static volatile Optional<Boolean> stdoutIsTerminalOverride = Optional.empty();
+
+    private final Writer out;
+    private final boolean colorEnabled;
+    private final StringBuilder row;
+    // Number of characters in the row that are color codes, which don't take up any width on the terminal
+    private int rowColorCodeLength;
+    private char[] writeBuffer;
+
+    /**
+     * @param out Stream to write the rendered rows to
+     * @param colorEnabled Whether to color the output with ANSI escape codes
+     */
+    public ListingRenderer(OutputStream out, boolean colorEnabled) {
+        this.out = new BufferedWriter(new OutputStreamWriter(out), OUTPUT_BUFFER_SIZE);
+        this.colorEnabled = colorEnabled;
+        this.row = new StringBuilder();
+        this.rowColorCodeLength = 0;
+        this.writeBuffer = new char[0];
+    }
+
+    /**
+     * @return A renderer writing to the current stdout, which only uses color if stdout is an interactive terminal
+     */
+    public static ListingRenderer forStdout() {
+        return new ListingRenderer(System.out, stdoutIsTerminalOverride.orElse(System.console() != null));
+    }
+
+    /**
+     * Overrides whether {@link #forStdout()} treats stdout as an interactive terminal, for when System.out has been
+     * redirected
+     * @param isTerminal Whether stdout is a terminal, or empty to go back to asking System.console()
+     */
+    public static void setStdoutIsTerminal(Optional<Boolean> isTerminal) {
+        stdoutIsTerminalOverride = isTerminal;
+    }
+
+    /**
+     * Starts a new row, beginning with its index
+     * @param index Index that the row can be referenced by
+     * @return This renderer, for chaining
+     */
+    public ListingRenderer startRow(int index) {
+        this.row.setLength(0);
+        this.rowColorCodeLength = 0;
+        this.row.append(index);
+        this.pad(INDEX_PAD_WIDTH);
+        return this;
+    }
+
+    public ListingRenderer append(CharSequence text) {
+        this.row.append(text);
+        return this;
+    }
+
+    public ListingRenderer append(char c) {
+        this.row.append(c);
+        return this;
+    }
+
+    /**
+     * Switches the color of the text that follows, if color is enabled
+     * @param ansiColor One of the ANSI_ color codes
+     * @return This renderer, for chaining
+     */
+    public ListingRenderer color(String ansiColor) {
+        if (this.colorEnabled) {
+            this.row.append(ansiColor);
+            this.rowColorCodeLength += ansiColor.length();
+        }
+        return this;
+    }
+
+    /**
+     * Appends spaces until the row (excluding color codes) would be the given width, if it's not already that wide
+     * @param width Width to pad the row to
+     * @return This renderer, for chaining
+     */
+    public ListingRenderer pad(int width) {
+        for (int i = this.row.length() - this.rowColorCodeLength; i < width; i++) {
+            this.row.append(' ');
+        }
+        return this;
+    }
+
+    /**
+     * Appends a timestamp in "yyyy-MM-dd HH:mm:ss" format, without going through a DateTimeFormatter
+     * @param timestamp Timestamp to append
+     * @return This renderer, for chaining
+     */
+    public ListingRenderer appendTimestamp(LocalDateTime timestamp) {
+        int year = timestamp.getYear();
+        if (year < 0 || year > 9999) {
+            // Rare enough not to be worth hand-formatting
+            this.row.append(String.format(
+                    "%04d-%02d-%02d %02d:%02d:%02d",
+                    year,
+                    timestamp.getMonthValue(),
+                    timestamp.getDayOfMonth(),
+                    timestamp.getHour(),
+                    timestamp.getMinute(),
+                    timestamp.getSecond()
+            ));
+            return this;
+        }
+        this.appendDigits(year, 4).append('-');
+        this.appendDigits(timestamp.getMonthValue(), 2).append('-');
+        this.appendDigits(timestamp.getDayOfMonth(), 2).append(' ');
+        this.appendDigits(timestamp.getHour(), 2).append(':');
+        this.appendDigits(timestamp.getMinute(), 2).append(':');
+        this.appendDigits(timestamp.getSecond(), 2);
+        return this;
+    }
+
+    /**
+     * Finishes the current row, resetting the color if it was changed, and queues it for writing
+     * @throws UncheckedIOException if the output couldn't be written
+     */
+    public void endRow() {
+        if (this.rowColorCodeLength > 0) {
+            this.row.append(ANSI_RESET);
+        }
+        this.row.append(System.lineSeparator());
+
+        // Copying out of the builder ourselves saves the String that Writer#append would create for every row
+        int rowLength = this.row.length();
+        if (this.writeBuffer.length < rowLength) {
+            this.writeBuffer = new char[Math.max(rowLength, 2 * this.writeBuffer.length)];
+        }
+        this.row.getChars(0, rowLength, this.writeBuffer, 0);
+        try {
+            this.out.write(this.writeBuffer, 0, rowLength);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes out any buffered rows
+     * @throws UncheckedIOException if the output couldn't be written
+     */
+    public void flush() {
+        try {
+            this.out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private ListingRenderer appendDigits(int value, int width) {
+        int divisor = 1;
+        for (int i = 1; i < width; i++) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            this.row.append((char) ('0' + (value / divisor) % 10));
+        }
+        return this;
+    }
+}
@@ -0,0 +1,75 @@
+package com.strangegrotto.clijournal.commands;
+
+import com.google.common.collect.Range;
+import com.strangegrotto.clijournal.entrystore.EntryQuery;
+import com.strangegrotto.clijournal.entrystore.QueryPredicate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Parses the user's entry queries, which are space-separated terms that entries must all match:
+ *  - tag:TAG           entries with the tag
+ *  - name:KEYWORD      entries whose name contains the keyword (a term without a field means the same)
+ *  - ext:EXTENSION     entries with the extension
+ *  - after:TIMESTAMP   entries created at or after the start of the (possibly partial) timestamp
+ *  - before:TIMESTAMP  entries created before the start of the (possibly partial) timestamp
+ */
+public class QueryParser {
+    private static final String FIELD_SEPARATOR = ":";
+    private static final String TAG_FIELD = "tag";
+    private static final String NAME_FIELD = "name";
+    private static final String EXTENSION_FIELD = "ext";
+    private static final String AFTER_FIELD = "after";
+    private static final String BEFORE_FIELD = "before";
+
+    private QueryParser() {}
+
+    /**
+     * @param queryStr Query to parse
+     * @return The parsed query
+     * @throws IllegalArgumentException if the query contains an invalid term
+     */
+    public static EntryQuery parse(String queryStr) {
+        List<QueryPredicate> predicates = new ArrayList<>();
+        for (String term : queryStr.trim().split("\\s+")) {
+            if (!term.isEmpty()) {
+                predicates.add(parseTerm(term));
+            }
+        }
+        return new EntryQuery(predicates);
+    }
+
+    private static QueryPredicate parseTerm(String term) {
+        int separatorIdx = term.indexOf(FIELD_SEPARATOR);
+        if (separatorIdx < 0) {
+            return QueryPredicate.nameContaining(term);
+        }
+
+        String field = term.substring(0, separatorIdx);
+        String value = term.substring(separatorIdx + FIELD_SEPARATOR.length());
+        if (value.isEmpty()) {
+            throw new IllegalArgumentException("Empty value in query term '" + term + "'");
+        }
+        switch (field) {
+            case TAG_FIELD:
+                return QueryPredicate.tag(value);
+            case NAME_FIELD:
+                return QueryPredicate.nameContaining(value);
+            case EXTENSION_FIELD:
+                return QueryPredicate.extension(value);
+            case AFTER_FIELD:
+                LocalDateTime afterStart = TimeExpressions.parseTimestampPrefix(value).lowerEndpoint();
+                return QueryPredicate.createdIn(Range.atLeast(afterStart), term);
+            case BEFORE_FIELD:
+                LocalDateTime beforeStart = TimeExpressions.parseTimestampPrefix(value).lowerEndpoint();
+                return QueryPredicate.createdIn(Range.lessThan(beforeStart), term);
+            default:
+                throw new IllegalArgumentException(
+                        "Unknown field '" + field + "' in query term '" + term + "'; expected one of "
+                                + String.join(", ", TAG_FIELD, NAME_FIELD, EXTENSION_FIELD, AFTER_FIELD, BEFORE_FIELD)
+                );
+        }
+    }
+}
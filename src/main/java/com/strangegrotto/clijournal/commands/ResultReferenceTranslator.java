@@ -22,6 +22,14 @@ public class ResultReferenceTranslator {
         this.resultsRecord = resultsRecord;
     }
 
+    /**
+     * @param token User-inputted token
+     * @return Whether the token refers to the results of the last listing command, rather than being a literal value
+     */
+    public static boolean isReference(String token) {
+        return !token.isEmpty() && token.charAt(0) == REFERENCE_LEADER;
+    }
+
     /**
      * @param expectedResultType Expected type of the last that's being referenced (will throw an error if the types don't match)
      * @param tokens User-inputted tokens to dereference
@@ -48,7 +56,7 @@ public class ResultReferenceTranslator {
 
         boolean hasReferences = false;
         for (String token : tokens) {
-            if (token.charAt(0) == REFERENCE_LEADER) {
+            if (isReference(token)) {
                 hasReferences = true;
                 break;
             }
@@ -74,7 +82,7 @@ public class ResultReferenceTranslator {
     }
 
     private List<String> dereferenceToken(String token) throws ResultDereferenceException {
-        if (token.charAt(0) != REFERENCE_LEADER) {
+        if (!isReference(token)) {
             return List.of(token);
         }
 
@@ -0,0 +1,96 @@
+package com.strangegrotto.clijournal.commands;
+
+import com.google.common.collect.Range;
+
+import java.time.DateTimeException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Helpers for parsing the user's time-related input (e.g. timestamps to filter entries by)
+ */
+public class TimeExpressions {
+    // yyyy[-MM[-dd[(T|_| )HH(:|-)mm[(:|-)ss]]]]
+    private static final Pattern TIMESTAMP_PREFIX_PATTERN = Pattern.compile(
+            "^(\\d{4})(?:-(\\d{2})(?:-(\\d{2})(?:[T_ ](\\d{2})[:-](\\d{2})(?:[:-](\\d{2}))?)?)?)?$"
+    );
+    private static final Pattern DURATION_PATTERN = Pattern.compile("^(\\d+)([mhdw])$");
+
+    private TimeExpressions() {}
+
+    /**
+     * Parses a possibly-partial timestamp (e.g. "2020", "2020-03", "2020-03-22_18:56") into the span of time that it
+     * covers, so that e.g. "2020-03" means all of March 2020
+     * @param str String to parse
+     * @return Range from the start of the span (inclusive) to its end (exclusive)
+     * @throws IllegalArgumentException if the string isn't a valid timestamp prefix
+     */
+    public static Range<LocalDateTime> parseTimestampPrefix(String str) {
+        Matcher matcher = TIMESTAMP_PREFIX_PATTERN.matcher(str);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException(
+                    "Invalid timestamp '" + str + "'; expected a prefix of yyyy-MM-dd_HH:mm:ss"
+            );
+        }
+
+        try {
+            int year = Integer.parseInt(matcher.group(1));
+            if (matcher.group(2) == null) {
+                LocalDateTime start = LocalDateTime.of(year, 1, 1, 0, 0);
+                return Range.closedOpen(start, start.plusYears(1));
+            }
+            int month = Integer.parseInt(matcher.group(2));
+            if (matcher.group(3) == null) {
+                LocalDateTime start = LocalDateTime.of(year, month, 1, 0, 0);
+                return Range.closedOpen(start, start.plusMonths(1));
+            }
+            int day = Integer.parseInt(matcher.group(3));
+            if (matcher.group(4) == null) {
+                LocalDateTime start = LocalDateTime.of(year, month, day, 0, 0);
+                return Range.closedOpen(start, start.plusDays(1));
+            }
+            int hour = Integer.parseInt(matcher.group(4));
+            int minute = Integer.parseInt(matcher.group(5));
+            if (matcher.group(6) == null) {
+                LocalDateTime start = LocalDateTime.of(year, month, day, hour, minute);
+                return Range.closedOpen(start, start.plusMinutes(1));
+            }
+            int second = Integer.parseInt(matcher.group(6));
+            LocalDateTime start = LocalDateTime.of(year, month, day, hour, minute, second);
+            return Range.closedOpen(start, start.plusSeconds(1));
+        } catch (DateTimeException e) {
+            throw new IllegalArgumentException("Invalid timestamp '" + str + "': " + e.getMessage());
+        }
+    }
+
+    /**
+     * Parses a short duration string like "30m", "12h", "7d", or "2w"
+     * @param str String to parse
+     * @return The duration
+     * @throws IllegalArgumentException if the string isn't a valid duration
+     */
+    public static Duration parseDuration(String str) {
+        Matcher matcher = DURATION_PATTERN.matcher(str);
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException(
+                    "Invalid duration '" + str + "'; expected a number followed by one of m, h, d, or w (e.g. '7d')"
+            );
+        }
+
+        long amount = Long.parseLong(matcher.group(1));
+        switch (matcher.group(2)) {
+            case "m":
+                return Duration.ofMinutes(amount);
+            case "h":
+                return Duration.ofHours(amount);
+            case "d":
+                return Duration.ofDays(amount);
+            case "w":
+                return Duration.ofDays(7 * amount);
+            default:
+                throw new IllegalArgumentException("Unhandled duration unit in '" + str + "'; this is a code error");
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.strangegrotto.clijournal.commands.verbs;
 
 import com.strangegrotto.clijournal.commands.CommandResultMetadata;
 import net.sourceforge.argparse4j.ArgumentParsers;
+import net.sourceforge.argparse4j.helper.HelpScreenException;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.ArgumentParserException;
 import net.sourceforge.argparse4j.inf.Namespace;
@@ -11,27 +12,27 @@ import java.util.List;
 public abstract class AbstractCommand implements Command {
     private final String alias;
     private final String helpStr;
-    private final ArgumentParser argParser;
+    // Built on first use, since most runs only use one or two commands
+    private ArgumentParser argParser;
 
     protected AbstractCommand(String alias, String helpStr) {
         this.alias = alias;
         this.helpStr = helpStr;
-        this.argParser = ArgumentParsers.newFor(this.alias).terminalWidthDetection(false).build()
-                .defaultHelp(true)
-                .description(helpStr);
-        this.configureParser(argParser);
+        this.argParser = null;
     }
 
     @Override
     public final CommandResultMetadata execute(List<String> args) {
+        ArgumentParser argParser = this.getArgParser();
         Namespace parsedArgs;
         try {
-            parsedArgs = this.argParser.parseArgs(args.toArray(new String[0]));
+            parsedArgs = argParser.parseArgs(args.toArray(new String[0]));
         } catch (ArgumentParserException e) {
             argParser.handleError(e);
             // For some reason, we get weird ordering of output lines if this isn't flushed right here
             System.out.flush();
-            return CommandResultMetadata.empty();
+            // Asking for help isn't a failure
+            return e instanceof HelpScreenException ? CommandResultMetadata.empty() : CommandResultMetadata.failure();
         }
         return this.runCommandLogic(parsedArgs);
     }
@@ -46,8 +47,18 @@ public abstract class AbstractCommand implements Command {
         return this.helpStr;
     }
 
+    private ArgumentParser getArgParser() {
+        if (this.argParser == null) {
+            this.argParser = ArgumentParsers.newFor(this.alias).terminalWidthDetection(false).build()
+                    .defaultHelp(true)
+                    .description(this.helpStr);
+            this.configureParser(this.argParser);
+        }
+        return this.argParser;
+    }
+
     /**
-     * Hook to allow subclasses to add custom arguments, called on construction
+     * Hook to allow subclasses to add custom arguments, called the first time the command is run
      * @param argParser Argument parser to configure
      */
     protected abstract void configureParser(ArgumentParser argParser);
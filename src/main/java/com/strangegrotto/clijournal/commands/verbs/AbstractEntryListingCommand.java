@@ -1,60 +1,44 @@
 package com.strangegrotto.clijournal.commands.verbs;
 
+import com.google.common.collect.Comparators;
+import com.google.common.collect.Range;
 import com.strangegrotto.clijournal.commands.ListingCmdResultType;
+import com.strangegrotto.clijournal.commands.ListingEncoder;
+import com.strangegrotto.clijournal.commands.ListingRenderer;
+import com.strangegrotto.clijournal.commands.TimeExpressions;
 import com.strangegrotto.clijournal.entrystore.Entry;
 import com.strangegrotto.clijournal.entrystore.EntryMetadata;
+import com.strangegrotto.clijournal.entrystore.EntryOrder;
 import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.MutuallyExclusiveGroup;
 import net.sourceforge.argparse4j.inf.Namespace;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class AbstractEntryListingCommand extends AbstractListingCommand<Entry> {
-    private enum SortType {
-        TIME(Comparator.comparing(
-                entry -> entry.getMetadata().getCreationTimestamp().orElse(MISSING_TIMESTAMP_SORT_VALUE)
-        )),
-        NAME(Comparator.comparing(
-                entry -> entry.getMetadata().getNameSansExt()
-        ));
-
-        private final Comparator<Entry> comparator;
-
-        SortType(Comparator<Entry> comparator) {
-            this.comparator = comparator;
-        }
-
-        public Comparator<Entry> getComparator() {
-            return this.comparator;
-        }
-    }
-
-    private static final DateTimeFormatter TIMESTAMP_FORMATTER = DateTimeFormatter.ofPattern(
-            "yyyy-MM-dd HH:mm:ss"
-    );
-    private static final SortType DEFAULT_SORT_TYPE = SortType.TIME;
+    private static final EntryOrder DEFAULT_SORT_TYPE = EntryOrder.TIME;
     private static final String SORT_TYPE_ARG = "sort_type";
     private static final String REVERSE_SORT_ARG = "reverse";
-    private static final LocalDateTime MISSING_TIMESTAMP_SORT_VALUE = LocalDateTime.of(1970, 1, 1, 0, 0, 0);
+    private static final String SINCE_ARG = "since";
+    private static final String UNTIL_ARG = "until";
+    private static final String LAST_ARG = "last";
+    private static final String HEAD_ARG = "head";
+    private static final String TAIL_ARG = "tail";
     private static final String MISSING_TIMESTAMP_RENDER_STR = "  <no timestamp>   ";
-
-    public static final String ANSI_RESET = "\u001B[0m";
-    public static final String ANSI_YELLOW = "\u001B[33m";
-    public static final String ANSI_PURPLE = "\u001B[35m";
-    public static final String ANSI_WHITE = "\u001B[37m";
+    private static final String COLUMN_SEPARATOR = "    ";
 
     public AbstractEntryListingCommand(String alias, String helpStr) {
         super(alias, helpStr);
     }
 
     @Override
-    protected final void configureParser(ArgumentParser argumentParser) {
-        List<String> sortChoices = Arrays.stream(SortType.values())
-                .map(sortType -> sortType.name().toLowerCase())
-                .collect(Collectors.toList());
+    protected final void configureListingParser(ArgumentParser argumentParser) {
         argumentParser.addArgument("-r")
                 .dest(REVERSE_SORT_ARG)
                 .action(Arguments.storeTrue())
@@ -64,8 +48,37 @@ public abstract class AbstractEntryListingCommand extends AbstractListingCommand
                 .dest(SORT_TYPE_ARG)
                 .setDefault(DEFAULT_SORT_TYPE)
                 .action(Arguments.storeConst())
-                .setConst(SortType.NAME.toString())
+                .setConst(EntryOrder.NAME.toString())
                 .help("Sort the results by name");
+
+        MutuallyExclusiveGroup lowerBoundGroup = argumentParser.addMutuallyExclusiveGroup();
+        lowerBoundGroup.addArgument("--since")
+                .dest(SINCE_ARG)
+                .metavar("TIMESTAMP")
+                .type((parser, arg, value) -> parseTimestampPrefix(parser, value).lowerEndpoint())
+                .help("Only show entries created at or after this (possibly partial) timestamp, e.g. 2020-03");
+        lowerBoundGroup.addArgument("--last")
+                .dest(LAST_ARG)
+                .metavar("DURATION")
+                .type((parser, arg, value) -> parseDuration(parser, value))
+                .help("Only show entries created in the given amount of time before now, e.g. 30m, 12h, 7d, 2w");
+        argumentParser.addArgument("--until")
+                .dest(UNTIL_ARG)
+                .metavar("TIMESTAMP")
+                .type((parser, arg, value) -> parseTimestampPrefix(parser, value).upperEndpoint())
+                .help("Only show entries created up to and including this (possibly partial) timestamp, e.g. 2020-03");
+
+        MutuallyExclusiveGroup limitGroup = argumentParser.addMutuallyExclusiveGroup();
+        limitGroup.addArgument("--head", "--limit")
+                .dest(HEAD_ARG)
+                .metavar("N")
+                .type((parser, arg, value) -> parseLimit(parser, value))
+                .help("Only show the first N results, in the current sort order");
+        limitGroup.addArgument("--tail")
+                .dest(TAIL_ARG)
+                .metavar("N")
+                .type((parser, arg, value) -> parseLimit(parser, value))
+                .help("Only show the last N results, in the current sort order");
         this.configureEntryListingParser(argumentParser);
     }
 
@@ -75,18 +88,69 @@ public abstract class AbstractEntryListingCommand extends AbstractListingCommand
     }
 
     @Override
-    protected List<Entry> getResults(Namespace parsedArgs) {
-        SortType sortType = SortType.valueOf(parsedArgs.getString(SORT_TYPE_ARG));
+    protected Stream<Entry> streamResults(Namespace parsedArgs) throws ListingException {
+        EntryOrder sortType = EntryOrder.valueOf(parsedArgs.getString(SORT_TYPE_ARG));
         Comparator<Entry> comparator = sortType.getComparator();
 
         boolean reverseSort = parsedArgs.getBoolean(REVERSE_SORT_ARG);
         comparator = reverseSort ? comparator.reversed() : comparator;
 
-        Set<Entry> entries = this.getEntries(parsedArgs);
+        Integer head = parsedArgs.getInt(HEAD_ARG);
+        Integer tail = parsedArgs.getInt(TAIL_ARG);
+        boolean ranked = this.isRanked(parsedArgs) && sortType == DEFAULT_SORT_TYPE;
 
-        List<Entry> sortedEntries = new ArrayList<>(entries);
-        sortedEntries.sort(comparator);
-        return sortedEntries;
+        if (!ranked) {
+            // The last N entries are the first N in the opposite order, reversed
+            boolean fetchReversed = tail != null ? !reverseSort : reverseSort;
+            Optional<Stream<Entry>> sortedEntriesOpt = this.getSortedEntries(parsedArgs, sortType, fetchReversed);
+            if (sortedEntriesOpt.isPresent()) {
+                Stream<Entry> sortedEntries = sortedEntriesOpt.get();
+                if (head != null) {
+                    return sortedEntries.limit(head);
+                } else if (tail != null) {
+                    List<Entry> lastEntries = sortedEntries.limit(tail).collect(Collectors.toList());
+                    Collections.reverse(lastEntries);
+                    return lastEntries.stream();
+                }
+                // Already in order, so nothing needs to be held in memory
+                return sortedEntries;
+            }
+        }
+
+        Collection<Entry> entries = this.getEntries(parsedArgs);
+        Stream<Entry> entryStream = entries.stream();
+        Optional<Range<LocalDateTime>> timeRangeOpt = this.getTimeRange(parsedArgs);
+        if (timeRangeOpt.isPresent()) {
+            Range<LocalDateTime> timeRange = timeRangeOpt.get();
+            entryStream = entryStream.filter(
+                    entry -> entry.getMetadata().getCreationTimestamp().map(timeRange::contains).orElse(false)
+            );
+        }
+
+        // Ranked results are already in the order they should be displayed, unless the user asked for another order
+        //  (TIME can only be the default, since there's no flag to choose it explicitly)
+        if (ranked) {
+            List<Entry> rankedEntries = entryStream.collect(Collectors.toList());
+            if (reverseSort) {
+                Collections.reverse(rankedEntries);
+            }
+            if (head != null) {
+                return rankedEntries.subList(0, Math.min(head, rankedEntries.size())).stream();
+            } else if (tail != null) {
+                return rankedEntries.subList(Math.max(rankedEntries.size() - tail, 0), rankedEntries.size()).stream();
+            }
+            return rankedEntries.stream();
+        }
+
+        // When limited, only the K entries that will be shown are ever sorted (O(n + k log k) rather than O(n log n))
+        if (head != null) {
+            return entryStream.collect(Comparators.least(head, comparator)).stream();
+        } else if (tail != null) {
+            List<Entry> lastEntries = entryStream.collect(Comparators.greatest(tail, comparator));
+            Collections.reverse(lastEntries);
+            return lastEntries.stream();
+        }
+        return entryStream.sorted(comparator);
     }
     @Override
     protected String getResultReferenceValue(Entry result) {
@@ -94,31 +158,127 @@ public abstract class AbstractEntryListingCommand extends AbstractListingCommand
     }
 
     @Override
-    protected String renderResult(Entry result, Namespace parsedArgs) {
+    protected void renderResult(Entry result, Namespace parsedArgs, ListingRenderer renderer) {
         EntryMetadata metadata = result.getMetadata();
-        String pseudoName = metadata.getNameSansExt() + "." + metadata.getExtension();
+
+        renderer.color(ListingRenderer.ANSI_YELLOW);
         Optional<LocalDateTime> timestampOpt = metadata.getCreationTimestamp();
-        String timestampStr;
         if (timestampOpt.isPresent()) {
-            timestampStr = TIMESTAMP_FORMATTER.format(timestampOpt.get());
+            renderer.appendTimestamp(timestampOpt.get());
         } else {
-            timestampStr = MISSING_TIMESTAMP_RENDER_STR;
+            renderer.append(MISSING_TIMESTAMP_RENDER_STR);
+        }
+        renderer.append(COLUMN_SEPARATOR);
+
+        renderer.color(ListingRenderer.ANSI_WHITE)
+                .append(metadata.getNameSansExt())
+                .append('.')
+                .append(metadata.getExtension())
+                .append(COLUMN_SEPARATOR);
+
+        renderer.color(ListingRenderer.ANSI_PURPLE);
+        boolean firstTag = true;
+        for (String tag : metadata.getTags()) {
+            if (!firstTag) {
+                renderer.append(' ');
+            }
+            renderer.append(tag);
+            firstTag = false;
+        }
+    }
+
+    @Override
+    protected void encodeResult(Entry result, ListingEncoder encoder) {
+        EntryMetadata metadata = result.getMetadata();
+        encoder.field("path", result.getFilepath().toString())
+                .field("name", metadata.getNameSansExt())
+                .field("extension", metadata.getExtension())
+                .timestampField("timestamp", metadata.getCreationTimestamp().orElse(null))
+                .listField("tags", metadata.getTags());
+    }
+
+    /**
+     * @param parsedArgs Parsed command args
+     * @return The range of creation timestamps that the user has restricted the results to, if any; entries outside
+     *  the range will be filtered out of the results, so subclasses can use this to avoid fetching them at all
+     */
+    protected final Optional<Range<LocalDateTime>> getTimeRange(Namespace parsedArgs) {
+        LocalDateTime since = parsedArgs.get(SINCE_ARG);
+        Duration last = parsedArgs.get(LAST_ARG);
+        LocalDateTime until = parsedArgs.get(UNTIL_ARG);
+        if (last != null) {
+            since = LocalDateTime.now().minus(last);
         }
-        String tagsStr = String.join(" ", metadata.getTags());
-
-        return String.format(
-                "%s%s    %s%s    %s%s%s",
-                ANSI_YELLOW,
-                timestampStr,
-                ANSI_WHITE,
-                pseudoName,
-                ANSI_PURPLE,
-                tagsStr,
-                ANSI_RESET
-        );
+
+        if (since != null && until != null) {
+            return Optional.of(since.isBefore(until) ? Range.closedOpen(since, until) : Range.closedOpen(since, since));
+        } else if (since != null) {
+            return Optional.of(Range.atLeast(since));
+        } else if (until != null) {
+            return Optional.of(Range.lessThan(until));
+        }
+        return Optional.empty();
     }
 
-    protected abstract Set<Entry> getEntries(Namespace parsedArgs);
+    /**
+     * Hook to get the entries that this command will display
+     * @param parsedArgs Parsed command args
+     * @return The entries to display; if {@link #isRanked(Namespace)} is true, they must be in ranked order
+     * @throws ListingException if the entries couldn't be gotten
+     */
+    protected abstract Collection<Entry> getEntries(Namespace parsedArgs) throws ListingException;
+
+    /**
+     * Hook for commands whose results have an inherent ranking (e.g. by search relevance), which will be used as the
+     * display order unless the user explicitly asks for a different sort
+     * @param parsedArgs Parsed command args
+     * @return True if the entries returned by {@link #getEntries(Namespace)} are in ranked order
+     */
+    protected boolean isRanked(Namespace parsedArgs) {
+        return false;
+    }
+
+    /**
+     * Hook for commands that can get their entries already sorted (e.g. from one of the entry store's ordered views),
+     * which saves fetching and sorting every entry, and lets --head and --tail stop after N entries
+     * @param parsedArgs Parsed command args
+     * @param order Order the entries will be displayed in
+     * @param descending Whether the order is reversed
+     * @return The entries to display, in order and already restricted to {@link #getTimeRange(Namespace)}, or empty
+     *  to have the entries from {@link #getEntries(Namespace)} sorted instead
+     */
+    protected Optional<Stream<Entry>> getSortedEntries(Namespace parsedArgs, EntryOrder order, boolean descending) {
+        return Optional.empty();
+    }
 
     protected abstract void configureEntryListingParser(ArgumentParser argumentParser);
+
+    private static Range<LocalDateTime> parseTimestampPrefix(ArgumentParser parser, String value) throws ArgumentParserException {
+        try {
+            return TimeExpressions.parseTimestampPrefix(value);
+        } catch (IllegalArgumentException e) {
+            throw new ArgumentParserException(e.getMessage(), parser);
+        }
+    }
+
+    private static int parseLimit(ArgumentParser parser, String value) throws ArgumentParserException {
+        int limit;
+        try {
+            limit = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new ArgumentParserException("Invalid number of results '" + value + "'", parser);
+        }
+        if (limit < 0) {
+            throw new ArgumentParserException("Number of results can't be negative, but got " + limit, parser);
+        }
+        return limit;
+    }
+
+    private static Duration parseDuration(ArgumentParser parser, String value) throws ArgumentParserException {
+        try {
+            return TimeExpressions.parseDuration(value);
+        } catch (IllegalArgumentException e) {
+            throw new ArgumentParserException(e.getMessage(), parser);
+        }
+    }
 }
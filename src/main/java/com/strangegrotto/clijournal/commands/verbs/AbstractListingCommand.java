@@ -3,38 +3,86 @@ package com.strangegrotto.clijournal.commands.verbs;
 import com.strangegrotto.clijournal.commands.CommandResultMetadata;
 import com.strangegrotto.clijournal.commands.ListingCmdResultType;
 import com.strangegrotto.clijournal.commands.ListingCmdResults;
+import com.strangegrotto.clijournal.commands.ListingEncoder;
+import com.strangegrotto.clijournal.commands.ListingFormat;
+import com.strangegrotto.clijournal.commands.ListingRenderer;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.Namespace;
 
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public abstract class AbstractListingCommand<T> extends AbstractCommand {
-    private static final int LIST_INDEX_PAD_WIDTH = 6;
+    private static final String FORMAT_ARG = "format";
 
     public AbstractListingCommand(String alias, String helpStr) {
         super(alias, helpStr);
     }
 
+    /**
+     * Thrown when a listing command can't produce its results (e.g. because of a bad reference or query), with a
+     * message for the user
+     */
+    protected static class ListingException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public ListingException(String message) {
+            super(message);
+        }
+    }
+
+    @Override
+    protected final void configureParser(ArgumentParser argParser) {
+        argParser.addArgument("--format")
+                .dest(FORMAT_ARG)
+                .choices(Arrays.stream(ListingFormat.values())
+                        .map(format -> format.name().toLowerCase())
+                        .collect(Collectors.toList()))
+                .setDefault(ListingFormat.HUMAN.name().toLowerCase())
+                .help("Output format; jsonl, tsv, and null (NUL-terminated paths, for 'xargs -0') are for other "
+                        + "programs to read");
+        this.configureListingParser(argParser);
+    }
+
     @Override
     public final CommandResultMetadata runCommandLogic(Namespace parsedArgs) {
-        List<T> results = this.getResults(parsedArgs);
-        if (results.size() > 0) {
-            for (int i = 0; i < results.size(); i++) {
-                T result = results.get(i);
-                String out = String.format(
-                        "%-" + LIST_INDEX_PAD_WIDTH + "s%s",
-                        i,
-                        this.renderResult(result, parsedArgs)
-                );
-                System.out.println(out);
+        ListingFormat format = ListingFormat.valueOf(parsedArgs.getString(FORMAT_ARG).toUpperCase());
+        Stream<T> results;
+        try {
+            results = this.streamResults(parsedArgs);
+        } catch (ListingException e) {
+            System.out.println(e.getMessage());
+            return CommandResultMetadata.failure();
+        }
+
+        // Results are written as they're streamed out of the store, so only their reference values are kept
+        List<String> resultRefValues = new ArrayList<>();
+        Iterator<T> resultIter = results.iterator();
+        if (format == ListingFormat.HUMAN) {
+            ListingRenderer renderer = ListingRenderer.forStdout();
+            while (resultIter.hasNext()) {
+                T result = resultIter.next();
+                renderer.startRow(resultRefValues.size());
+                this.renderResult(result, parsedArgs, renderer);
+                renderer.endRow();
+                resultRefValues.add(this.getResultReferenceValue(result));
+            }
+            renderer.flush();
+            if (resultRefValues.isEmpty()) {
+                System.out.println("No results");
             }
         } else {
-            System.out.println("No results");
+            ListingEncoder encoder = ListingEncoder.create(format, System.out);
+            while (resultIter.hasNext()) {
+                T result = resultIter.next();
+                encoder.startRecord();
+                this.encodeResult(result, encoder);
+                encoder.endRecord();
+                resultRefValues.add(this.getResultReferenceValue(result));
+            }
+            encoder.flush();
         }
-        List<String> resultRefValues = results.stream()
-                .map(this::getResultReferenceValue)
-                .collect(Collectors.toList());
         ListingCmdResultType resultType = this.getResultType();
         ListingCmdResults cmdResults = new ListingCmdResults(resultRefValues, resultType);
         return CommandResultMetadata.of(
@@ -48,13 +96,20 @@ public abstract class AbstractListingCommand<T> extends AbstractCommand {
      */
     protected abstract ListingCmdResultType getResultType();
 
+    /**
+     * Hook to allow subclasses to add custom arguments, on top of the ones every listing command takes
+     * @param argParser Argument parser to configure
+     */
+    protected abstract void configureListingParser(ArgumentParser argParser);
+
     /**
      * Hook to get the results that this command will display, sorted in the manner that they
-     * should be displayed.
+     * should be displayed. The stream is only consumed once, as the results are written out.
      * @param parsedArgs Remaining args
      * @return
+     * @throws ListingException if the results couldn't be gotten
      */
-    protected abstract List<T> getResults(Namespace parsedArgs);
+    protected abstract Stream<T> streamResults(Namespace parsedArgs) throws ListingException;
 
     /**
      * Translates the result type expected by the command to a string that is the value which will be used
@@ -65,9 +120,17 @@ public abstract class AbstractListingCommand<T> extends AbstractCommand {
     protected abstract String getResultReferenceValue(T result);
 
     /**
-     * Renders a given result, with the resulting string being what's displayed in the command output
+     * Renders a given result into the current row of the command output, after the row's index
      * @param result Command result to render
-     * @return Pretty version of the result
+     * @param renderer Renderer to append the pretty version of the result to
+     */
+    protected abstract void renderResult(T result, Namespace parsedArgs, ListingRenderer renderer);
+
+    /**
+     * Writes the fields of a given result into the current record of machine-readable output. The first field should
+     * be the one that identifies the result (e.g. an entry's path), since some formats only write that one.
+     * @param result Command result to encode
+     * @param encoder Encoder to write the result's fields to
      */
-    protected abstract String renderResult(T result, Namespace parsedArgs);
+    protected abstract void encodeResult(T result, ListingEncoder encoder);
 }
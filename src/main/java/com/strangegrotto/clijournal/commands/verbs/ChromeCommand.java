@@ -4,7 +4,7 @@ import com.google.common.collect.Lists;
 import com.strangegrotto.clijournal.commands.CommandResultMetadata;
 import com.strangegrotto.clijournal.commands.ListingCmdResultType;
 import com.strangegrotto.clijournal.commands.ResultReferenceTranslator;
-import com.strangegrotto.clijournal.entrystore.EntryStore;
+import com.strangegrotto.clijournal.entrystore.FederatedEntryStore;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.Namespace;
 
@@ -13,13 +13,15 @@ import java.util.Optional;
 import java.util.stream.Collectors;
 
 public class ChromeCommand extends AbstractCommand {
+    public static final String ALIAS = "chrome";
+    public static final String HELP = "Opens the referenced result in Chrome";
     private static final String ENTRIES_ARG = "entry";
 
-    private final EntryStore entryStore;
+    private final FederatedEntryStore entryStore;
     private final ResultReferenceTranslator referenceTranslator;
 
-    public ChromeCommand(EntryStore entryStore, ResultReferenceTranslator referenceTranslator) {
-        super("chrome", "Opens the referenced result in Chrome");
+    public ChromeCommand(FederatedEntryStore entryStore, ResultReferenceTranslator referenceTranslator) {
+        super(ALIAS, HELP);
         this.entryStore = entryStore;
         this.referenceTranslator = referenceTranslator;
     }
@@ -42,7 +44,7 @@ public class ChromeCommand extends AbstractCommand {
             );
         } catch (ResultReferenceTranslator.ResultDereferenceException e) {
             System.out.println(e.getMessage());
-            return CommandResultMetadata.empty();
+            return CommandResultMetadata.failure();
         }
         List<String> filepaths = this.entryStore.getByIds(entryIds).stream()
                 .map(entry -> entry.getFilepath().toString())
@@ -0,0 +1,60 @@
+package com.strangegrotto.clijournal.commands.verbs;
+
+import com.strangegrotto.clijournal.commands.CommandResultMetadata;
+import com.strangegrotto.clijournal.commands.QueryParser;
+import com.strangegrotto.clijournal.entrystore.EntryQuery;
+import com.strangegrotto.clijournal.entrystore.FederatedEntryStore;
+import com.strangegrotto.clijournal.entrystore.QueryPlan;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.util.List;
+
+public class ExplainCommand extends AbstractCommand {
+    public static final String ALIAS = "explain";
+    public static final String HELP = "Runs a query (as 'find -q' would) and shows the order its terms were applied "
+            + "in, with the estimated and actual number of entries left after each";
+    private static final String QUERY_TERMS_ARG = "query_term";
+
+    private final FederatedEntryStore entryStore;
+
+    public ExplainCommand(FederatedEntryStore entryStore) {
+        super(ALIAS, HELP);
+        this.entryStore = entryStore;
+    }
+
+    @Override
+    protected void configureParser(ArgumentParser argParser) {
+        argParser.addArgument(QUERY_TERMS_ARG)
+                .nargs("*")
+                .help("Terms of the query to explain");
+    }
+
+    @Override
+    public CommandResultMetadata runCommandLogic(Namespace parsedArgs) {
+        List<String> queryTerms = parsedArgs.getList(QUERY_TERMS_ARG);
+        EntryQuery query;
+        try {
+            query = QueryParser.parse(String.join(" ", queryTerms));
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
+            return CommandResultMetadata.failure();
+        }
+
+        QueryPlan plan = this.entryStore.executeQuery(query);
+        System.out.println(String.format("%-6s%-14s%-30s%12s%12s", "Step", "Access", "Term", "Estimated", "Actual"));
+        List<QueryPlan.Step> steps = plan.getSteps();
+        for (int i = 0; i < steps.size(); i++) {
+            QueryPlan.Step step = steps.get(i);
+            System.out.println(String.format(
+                    "%-6d%-14s%-30s%12d%12d",
+                    i + 1,
+                    step.getAccess().toString().toLowerCase().replace('_', ' '),
+                    step.getDescription(),
+                    step.getEstimatedRows(),
+                    step.getActualRows()
+            ));
+        }
+        return CommandResultMetadata.empty();
+    }
+}
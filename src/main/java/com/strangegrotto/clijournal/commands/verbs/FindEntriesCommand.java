@@ -1,70 +1,119 @@
 package com.strangegrotto.clijournal.commands.verbs;
 
-import com.google.common.collect.Lists;
 import com.strangegrotto.clijournal.commands.ListingCmdResultType;
+import com.strangegrotto.clijournal.commands.QueryParser;
 import com.strangegrotto.clijournal.commands.ResultReferenceTranslator;
 import com.strangegrotto.clijournal.entrystore.Entry;
-import com.strangegrotto.clijournal.entrystore.EntryStore;
+import com.strangegrotto.clijournal.entrystore.FederatedEntryStore;
+import com.strangegrotto.clijournal.entrystore.TagQuery;
 import net.sourceforge.argparse4j.impl.Arguments;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.MutuallyExclusiveGroup;
 import net.sourceforge.argparse4j.inf.Namespace;
 
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
-import java.util.Set;
-import java.util.function.BiFunction;
+import java.util.stream.Collectors;
 
 public class FindEntriesCommand extends AbstractEntryListingCommand {
+    public static final String ALIAS = "find";
+    public static final String HELP = "Finds entries containing the given parameters";
+    private interface StoreQueryFunc {
+        Collection<Entry> apply(FederatedEntryStore entryStore, String searchTerm, Namespace parsedArgs);
+    }
+
     private enum SearchType {
-        TAG((entryStore, keyword) -> entryStore.getByTag(keyword)),
-        NAME((entryStore, keyword) -> entryStore.getByName(keyword));
+        TAG((entryStore, expression, args) -> entryStore.getByTagQuery(TagQuery.parse(expression)), false),
+        NAME((entryStore, keyword, args) -> entryStore.getByName(keyword), false),
+        FUZZY_NAME((entryStore, name, args) -> entryStore.getByFuzzyName(name, args.getInt(MAX_DISTANCE_ARG)), true),
+        CONTENT((entryStore, keyword, args) -> entryStore.getByContent(keyword), true),
+        QUERY((entryStore, query, args) -> entryStore.executeQuery(QueryParser.parse(query)).getEntries(), false);
 
-        private final BiFunction<EntryStore, String, Set<Entry>> storeQueryFunc;
+        private final StoreQueryFunc storeQueryFunc;
+        private final boolean ranked;
 
-        SearchType(BiFunction<EntryStore, String, Set<Entry>> storeQueryFunc) {
+        SearchType(StoreQueryFunc storeQueryFunc, boolean ranked) {
             this.storeQueryFunc = storeQueryFunc;
+            this.ranked = ranked;
         }
 
-        public BiFunction<EntryStore, String, Set<Entry>> getStoreQueryFunc() {
+        public StoreQueryFunc getStoreQueryFunc() {
             return storeQueryFunc;
         }
+
+        public boolean isRanked() {
+            return ranked;
+        }
     }
     private static final String SEARCH_TYPE_ARG = "find_type";
     private static final String SEARCH_TERM_ARG = "search_term";
+    private static final String MAX_DISTANCE_ARG = "max_distance";
+    private static final int DEFAULT_MAX_DISTANCE = 2;
 
-    private final EntryStore entryStore;
+    private final FederatedEntryStore entryStore;
     private final ResultReferenceTranslator refTranslator;
 
-    public FindEntriesCommand(EntryStore entryStore, ResultReferenceTranslator refTranslator) {
-        super("find", "Finds entries containing the given parameters");
+    public FindEntriesCommand(FederatedEntryStore entryStore, ResultReferenceTranslator refTranslator) {
+        super(ALIAS, HELP);
         this.entryStore = entryStore;
         this.refTranslator = refTranslator;
     }
 
     @Override
     protected void configureEntryListingParser(ArgumentParser argumentParser) {
-        argumentParser.addArgument("-t")
+        MutuallyExclusiveGroup searchTypeGroup = argumentParser.addMutuallyExclusiveGroup();
+        searchTypeGroup.addArgument("-t")
                 .dest(SEARCH_TYPE_ARG)
                 .setDefault(SearchType.NAME.toString())
                 .action(Arguments.storeConst())
                 .setConst(SearchType.TAG.toString())
-                .help("Searches for a tag");
+                .help("Searches for entries whose tags match an expression (e.g. 'work & !draft | meeting'); put a '\\' "
+                        + "before any of &|!() or a space that's part of a tag");
+        searchTypeGroup.addArgument("-c")
+                .dest(SEARCH_TYPE_ARG)
+                .setDefault(SearchType.NAME.toString())
+                .action(Arguments.storeConst())
+                .setConst(SearchType.CONTENT.toString())
+                .help("Searches the contents of entries, ranking results by relevance");
+        searchTypeGroup.addArgument("-f")
+                .dest(SEARCH_TYPE_ARG)
+                .setDefault(SearchType.NAME.toString())
+                .action(Arguments.storeConst())
+                .setConst(SearchType.FUZZY_NAME.toString())
+                .help("Searches for names within a few typos of the search term, ranking results by closeness");
+        searchTypeGroup.addArgument("-q")
+                .dest(SEARCH_TYPE_ARG)
+                .setDefault(SearchType.NAME.toString())
+                .action(Arguments.storeConst())
+                .setConst(SearchType.QUERY.toString())
+                .help("Searches for entries matching every term of a query (e.g. 'tag:work after:2020-03 ext:md'); "
+                        + "see 'explain' for how a query is run");
+        argumentParser.addArgument("-d")
+                .dest(MAX_DISTANCE_ARG)
+                .metavar("EDITS")
+                .type(Integer.class)
+                .setDefault(DEFAULT_MAX_DISTANCE)
+                .help("Maximum number of single-character edits allowed by -f");
         argumentParser.addArgument(SEARCH_TERM_ARG)
-                .help("Term to search for");
+                .nargs("+")
+                .help("Term to search for (content, tag, and query searches can use several)");
+    }
+
+    @Override
+    protected boolean isRanked(Namespace parsedArgs) {
+        return SearchType.valueOf(parsedArgs.getString(SEARCH_TYPE_ARG)).isRanked();
     }
 
-    // TODO Make this function Go-like, and return both a return value and an error!
     @Override
-    protected Set<Entry> getEntries(Namespace parsedArgs) {
-        String searchTerm = parsedArgs.getString(SEARCH_TERM_ARG);
+    protected Collection<Entry> getEntries(Namespace parsedArgs) throws ListingException {
+        List<String> searchTerms = parsedArgs.getList(SEARCH_TERM_ARG);
 
         SearchType searchType;
         try {
             searchType = SearchType.valueOf(parsedArgs.getString(SEARCH_TYPE_ARG));
         } catch (IllegalArgumentException e) {
-            System.out.println(e.getMessage());
-            // TODO Make this type a combination of error and result!!
-            return new HashSet<>();
+            throw new ListingException(e.getMessage());
         }
 
         ListingCmdResultType expectedPreviousCmdResultType;
@@ -72,40 +121,84 @@ public class FindEntriesCommand extends AbstractEntryListingCommand {
             // TODO it doesn't make much sense to do a dereference by name, since if you already have the name (from a
             //  previous find command) you could just open that directly
             case NAME:
+            case FUZZY_NAME:
                 expectedPreviousCmdResultType = ListingCmdResultType.JOURNAL_ENTRY;
                 break;
             case TAG:
+            case CONTENT:
+                // For content searches, tags are the closest thing we have to a previous result containing words
                 expectedPreviousCmdResultType = ListingCmdResultType.TAG;
                 break;
+            case QUERY:
+                // Query terms are field-prefixed, so aren't references to a previous result
+                return this.runSearch(searchType, String.join(" ", searchTerms), parsedArgs);
             default:
-                System.out.println("Error: Unhandled search type '" + searchType + "'; this is a code error");
-                return new HashSet<>();
-        }
-
-        List<String> dereferencedSearchTerms;
-        try {
-            dereferencedSearchTerms = this.refTranslator.dereferenceTokens(
-                    expectedPreviousCmdResultType,
-                    Lists.newArrayList(searchTerm)
-            );
-        } catch (ResultReferenceTranslator.ResultDereferenceException e) {
-            System.out.println(e.getMessage());
-            return new HashSet<>();
+                throw new ListingException("Error: Unhandled search type '" + searchType + "'; this is a code error");
         }
 
-        // TODO Upgrade the entry store to allow multiple search terms
-        if (dereferencedSearchTerms.size() != 1) {
-            System.out.println("Error: Expected exactly one search term but got " + dereferencedSearchTerms.size() + ": " + dereferencedSearchTerms);
-            return new HashSet<>();
+        String dereferencedSearchTerm;
+        if (searchType == SearchType.TAG) {
+            // Each token is dereferenced on its own so that a multi-value reference stays a disjunction inside the
+            //  tag expression; the parts are and-ed by being next to each other (e.g. '@0,1 @2' -> '(a | b) c')
+            List<String> expressionParts = new ArrayList<>(searchTerms.size());
+            for (String searchTerm : searchTerms) {
+                List<String> dereferencedTags;
+                try {
+                    dereferencedTags = this.refTranslator.dereferenceTokens(
+                            expectedPreviousCmdResultType,
+                            List.of(searchTerm)
+                    );
+                } catch (ResultReferenceTranslator.ResultDereferenceException e) {
+                    throw new ListingException(e.getMessage());
+                }
+                // Referenced tags are values rather than expressions, so any operator characters in them are literal
+                if (ResultReferenceTranslator.isReference(searchTerm)) {
+                    dereferencedTags = dereferencedTags.stream()
+                            .map(TagQuery::escapeTag)
+                            .collect(Collectors.toList());
+                }
+                if (dereferencedTags.size() == 1) {
+                    expressionParts.add(dereferencedTags.get(0));
+                } else {
+                    expressionParts.add("(" + String.join(" | ", dereferencedTags) + ")");
+                }
+            }
+            dereferencedSearchTerm = String.join(" ", expressionParts);
+        } else {
+            List<String> dereferencedSearchTerms;
+            try {
+                dereferencedSearchTerms = this.refTranslator.dereferenceTokens(
+                        expectedPreviousCmdResultType,
+                        searchTerms
+                );
+            } catch (ResultReferenceTranslator.ResultDereferenceException e) {
+                throw new ListingException(e.getMessage());
+            }
+
+            if (searchType == SearchType.CONTENT) {
+                dereferencedSearchTerm = String.join(" ", dereferencedSearchTerms);
+            } else {
+                // TODO Upgrade the entry store to allow multiple search terms
+                if (dereferencedSearchTerms.size() != 1) {
+                    throw new ListingException("Error: Expected exactly one search term but got "
+                            + dereferencedSearchTerms.size() + ": " + dereferencedSearchTerms);
+                }
+                dereferencedSearchTerm = dereferencedSearchTerms.get(0);
+            }
         }
-        String dereferencedSearchTerm = dereferencedSearchTerms.get(0);
-
-        // TODO Debugging
-        System.out.println("Search Term: " + dereferencedSearchTerm);
 
-        // TODO Debugging
-        System.out.println("Search Type: " + searchType);
+        return this.runSearch(searchType, dereferencedSearchTerm, parsedArgs);
+    }
 
-        return searchType.getStoreQueryFunc().apply(this.entryStore, dereferencedSearchTerm);
+    private Collection<Entry> runSearch(
+            SearchType searchType,
+            String searchTerm,
+            Namespace parsedArgs) throws ListingException {
+        try {
+            return searchType.getStoreQueryFunc().apply(this.entryStore, searchTerm, parsedArgs);
+        } catch (IllegalArgumentException e) {
+            // Thrown for malformed tag expressions and queries
+            throw new ListingException(e.getMessage());
+        }
     }
 }
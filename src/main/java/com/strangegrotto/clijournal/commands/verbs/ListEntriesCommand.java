@@ -1,17 +1,24 @@
 package com.strangegrotto.clijournal.commands.verbs;
 
+import com.google.common.collect.Range;
 import com.strangegrotto.clijournal.entrystore.Entry;
-import com.strangegrotto.clijournal.entrystore.EntryStore;
+import com.strangegrotto.clijournal.entrystore.EntryOrder;
+import com.strangegrotto.clijournal.entrystore.FederatedEntryStore;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.Namespace;
 
-import java.util.Set;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.stream.Stream;
 
 public class ListEntriesCommand extends AbstractEntryListingCommand {
-    private final EntryStore entryStore;
+    public static final String ALIAS = "ls";
+    public static final String HELP = "Lists all entries in the journal";
+    private final FederatedEntryStore entryStore;
 
-    public ListEntriesCommand(EntryStore entryStore) {
-        super("ls", "Lists all entries in the journal");
+    public ListEntriesCommand(FederatedEntryStore entryStore) {
+        super(ALIAS, HELP);
         this.entryStore = entryStore;
     }
 
@@ -19,7 +26,22 @@ public class ListEntriesCommand extends AbstractEntryListingCommand {
     protected void configureEntryListingParser(ArgumentParser argumentParser) {}
 
     @Override
-    protected Set<Entry> getEntries(Namespace parsedArgs) {
+    protected Optional<Stream<Entry>> getSortedEntries(Namespace parsedArgs, EntryOrder order, boolean descending) {
+        Optional<Range<LocalDateTime>> timeRangeOpt = this.getTimeRange(parsedArgs);
+        if (!timeRangeOpt.isPresent()) {
+            return Optional.of(this.entryStore.streamAllEntries(order, descending));
+        } else if (order == EntryOrder.TIME) {
+            return Optional.of(this.entryStore.streamByTimeRange(timeRangeOpt.get(), descending));
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    protected Collection<Entry> getEntries(Namespace parsedArgs) {
+        Optional<Range<LocalDateTime>> timeRangeOpt = this.getTimeRange(parsedArgs);
+        if (timeRangeOpt.isPresent()) {
+            return this.entryStore.getByTimeRange(timeRangeOpt.get());
+        }
         return this.entryStore.getAllEntries();
     }
 }
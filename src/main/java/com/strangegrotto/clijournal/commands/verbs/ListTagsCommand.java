@@ -1,7 +1,9 @@
 package com.strangegrotto.clijournal.commands.verbs;
 
 import com.strangegrotto.clijournal.commands.ListingCmdResultType;
-import com.strangegrotto.clijournal.entrystore.EntryStore;
+import com.strangegrotto.clijournal.commands.ListingEncoder;
+import com.strangegrotto.clijournal.commands.ListingRenderer;
+import com.strangegrotto.clijournal.entrystore.FederatedEntryStore;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.Namespace;
 
@@ -9,18 +11,21 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class ListTagsCommand extends AbstractListingCommand<String> {
+    public static final String ALIAS = "tags";
+    public static final String HELP = "Lists the tags currently in use in the journal";
     private static final Comparator TAG_SORTER = Comparator.comparing(Function.identity());
 
-    private final EntryStore entryStore;
-    public ListTagsCommand(EntryStore entryStore) {
-        super("tags", "Lists the tags currently in use in the journal");
+    private final FederatedEntryStore entryStore;
+    public ListTagsCommand(FederatedEntryStore entryStore) {
+        super(ALIAS, HELP);
         this.entryStore = entryStore;
     }
 
     @Override
-    protected void configureParser(ArgumentParser argParser) {}
+    protected void configureListingParser(ArgumentParser argParser) {}
 
     @Override
     protected ListingCmdResultType getResultType() {
@@ -28,11 +33,11 @@ public class ListTagsCommand extends AbstractListingCommand<String> {
     }
 
     @Override
-    protected List<String> getResults(Namespace parsedArgs) {
+    protected Stream<String> streamResults(Namespace parsedArgs) {
         List<String> tags = new ArrayList<>(this.entryStore.getAllTags());
         // If we want, one day we can make this configurable
         tags.sort(TAG_SORTER);
-        return tags;
+        return tags.stream();
     }
 
     @Override
@@ -41,7 +46,12 @@ public class ListTagsCommand extends AbstractListingCommand<String> {
     }
 
     @Override
-    protected String renderResult(String result, Namespace parsedArgs) {
-        return result;
+    protected void renderResult(String result, Namespace parsedArgs, ListingRenderer renderer) {
+        renderer.append(result);
+    }
+
+    @Override
+    protected void encodeResult(String result, ListingEncoder encoder) {
+        encoder.field("tag", result);
     }
 }
@@ -4,7 +4,7 @@ import com.google.common.collect.Sets;
 import com.strangegrotto.clijournal.commands.CommandResultMetadata;
 import com.strangegrotto.clijournal.commands.ListingCmdResultType;
 import com.strangegrotto.clijournal.commands.ResultReferenceTranslator;
-import com.strangegrotto.clijournal.entrystore.EntryStore;
+import com.strangegrotto.clijournal.entrystore.FederatedEntryStore;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.Namespace;
 
@@ -16,14 +16,16 @@ import java.util.List;
 import java.util.Optional;
 
 public class NewEntryCommand extends AbstractCommand {
+    public static final String ALIAS = "new";
+    public static final String HELP = "Adds a new journal entry with the given parameters";
     private static final String ENTRY_PSEUDO_FILENAME_ARG = "entry_filename";
     private static final String TAGS_ARG = "tag";
 
-    private final EntryStore entryStore;
+    private final FederatedEntryStore entryStore;
     private final ResultReferenceTranslator referenceTranslator;
 
-    public NewEntryCommand(EntryStore entryStore, ResultReferenceTranslator referenceTranslator) {
-        super("new", "Adds a new journal entry with the given parameters");
+    public NewEntryCommand(FederatedEntryStore entryStore, ResultReferenceTranslator referenceTranslator) {
+        super(ALIAS, HELP);
         this.entryStore = entryStore;
         this.referenceTranslator = referenceTranslator;
     }
@@ -31,7 +33,8 @@ public class NewEntryCommand extends AbstractCommand {
     @Override
     protected void configureParser(ArgumentParser argParser) {
         argParser.addArgument(ENTRY_PSEUDO_FILENAME_ARG)
-                .help("Entry name, in form 'name.ext'");
+                .help("Entry name, in form 'name.ext' (or 'journal/name.ext' to add it to a journal other than the "
+                        + "first one configured)");
         argParser.addArgument(TAGS_ARG)
                 .nargs("*")
                 .setDefault(new ArrayList<String>())
@@ -50,14 +53,21 @@ public class NewEntryCommand extends AbstractCommand {
             );
         } catch (ResultReferenceTranslator.ResultDereferenceException e) {
             System.out.println(e.getMessage());
-            return CommandResultMetadata.empty();
+            return CommandResultMetadata.failure();
         }
 
-        Path filepath = this.entryStore.getNewEntryFilepath(
-                pseudoFilename,
-                LocalDateTime.now(),
-                Sets.newHashSet(dereferencedTagTokens)
-        );
+        Path filepath;
+        try {
+            filepath = this.entryStore.getNewEntryFilepath(
+                    pseudoFilename,
+                    LocalDateTime.now(),
+                    Sets.newHashSet(dereferencedTagTokens)
+            );
+        } catch (IllegalArgumentException e) {
+            // Thrown for a journal prefix that doesn't name a journal
+            System.out.println(e.getMessage());
+            return CommandResultMetadata.failure();
+        }
         return CommandResultMetadata.of(
                 Optional.of(Arrays.asList("vim", filepath.toString())),
                 Optional.empty()
@@ -8,9 +8,11 @@ import java.util.List;
 import java.util.Optional;
 
 public class QuitCommand extends AbstractCommand {
+    public static final String ALIAS = "quit";
+    public static final String HELP = "Quits the CLI";
 
     public QuitCommand() {
-        super("quit", "Quits the CLI");
+        super(ALIAS, HELP);
     }
 
     @Override
@@ -0,0 +1,98 @@
+package com.strangegrotto.clijournal.commands.verbs;
+
+import com.strangegrotto.clijournal.commands.CommandResultMetadata;
+import com.strangegrotto.clijournal.commands.TimeExpressions;
+import com.strangegrotto.clijournal.metrics.MetricsRegistry;
+import net.sourceforge.argparse4j.impl.Arguments;
+import net.sourceforge.argparse4j.inf.ArgumentParser;
+import net.sourceforge.argparse4j.inf.ArgumentParserException;
+import net.sourceforge.argparse4j.inf.MutuallyExclusiveGroup;
+import net.sourceforge.argparse4j.inf.Namespace;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+
+public class StatsCommand extends AbstractCommand {
+    public static final String ALIAS = "stats";
+    public static final String HELP = "Shows the latency, allocation, and result sizes of the commands and queries run "
+            + "this session";
+    private static final String RESET_ARG = "reset";
+    private static final String DUMP_ARG = "dump";
+    private static final String STOP_DUMP_ARG = "stop_dump";
+    private static final String DUMP_INTERVAL_ARG = "every";
+    // Kept as the user wrote it, so it can be echoed back the same way
+    private static final String DEFAULT_DUMP_INTERVAL = "1m";
+
+    private final MetricsRegistry metrics;
+
+    public StatsCommand(MetricsRegistry metrics) {
+        super(ALIAS, HELP);
+        this.metrics = metrics;
+    }
+
+    @Override
+    protected void configureParser(ArgumentParser argParser) {
+        argParser.addArgument("--reset")
+                .dest(RESET_ARG)
+                .action(Arguments.storeTrue())
+                .setDefault(false)
+                .help("Clear the metrics after showing them");
+        MutuallyExclusiveGroup dumpGroup = argParser.addMutuallyExclusiveGroup();
+        dumpGroup.addArgument("--dump")
+                .dest(DUMP_ARG)
+                .metavar("FILE")
+                .help("Keep writing the metrics to this file in the background, for watching a long-lived session");
+        dumpGroup.addArgument("--stop-dump")
+                .dest(STOP_DUMP_ARG)
+                .action(Arguments.storeTrue())
+                .setDefault(false)
+                .help("Stop writing the metrics to a file");
+        argParser.addArgument("--every")
+                .dest(DUMP_INTERVAL_ARG)
+                .metavar("DURATION")
+                .type((parser, arg, value) -> validateDumpInterval(parser, value))
+                .setDefault(DEFAULT_DUMP_INTERVAL)
+                .help("How often --dump writes the metrics, e.g. 30m, 12h (default: " + DEFAULT_DUMP_INTERVAL + ")");
+    }
+
+    @Override
+    public CommandResultMetadata runCommandLogic(Namespace parsedArgs) {
+        System.out.print(this.metrics.formatReport());
+
+        String dumpFilepathStr = parsedArgs.getString(DUMP_ARG);
+        if (dumpFilepathStr != null) {
+            Path dumpFilepath = Paths.get(dumpFilepathStr).toAbsolutePath();
+            String dumpIntervalStr = parsedArgs.getString(DUMP_INTERVAL_ARG);
+            this.metrics.dumpPeriodically(dumpFilepath, TimeExpressions.parseDuration(dumpIntervalStr));
+            System.out.println("Writing metrics to " + dumpFilepath + " every " + dumpIntervalStr);
+        } else if (parsedArgs.getBoolean(STOP_DUMP_ARG)) {
+            this.metrics.stopDumping();
+            System.out.println("Stopped writing metrics");
+        }
+
+        if (parsedArgs.getBoolean(RESET_ARG)) {
+            this.metrics.reset();
+        }
+        return CommandResultMetadata.empty();
+    }
+
+    /**
+     * @return The interval as given, once it's known to be a valid, positive duration
+     */
+    private static String validateDumpInterval(ArgumentParser parser, String value) throws ArgumentParserException {
+        Duration interval;
+        try {
+            interval = TimeExpressions.parseDuration(value);
+        } catch (IllegalArgumentException e) {
+            throw new ArgumentParserException(e.getMessage(), parser);
+        }
+        if (interval.isZero() || interval.isNegative()) {
+            throw new ArgumentParserException(
+                    "Dump interval must be longer than zero, but got '" + value + "'",
+                    parser
+            );
+        }
+        return value;
+    }
+}
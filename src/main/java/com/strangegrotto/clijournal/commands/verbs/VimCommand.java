@@ -3,7 +3,7 @@ package com.strangegrotto.clijournal.commands.verbs;
 import com.strangegrotto.clijournal.commands.CommandResultMetadata;
 import com.strangegrotto.clijournal.commands.ListingCmdResultType;
 import com.strangegrotto.clijournal.commands.ResultReferenceTranslator;
-import com.strangegrotto.clijournal.entrystore.EntryStore;
+import com.strangegrotto.clijournal.entrystore.FederatedEntryStore;
 import net.sourceforge.argparse4j.inf.ArgumentParser;
 import net.sourceforge.argparse4j.inf.Namespace;
 
@@ -13,13 +13,16 @@ import java.util.Optional;
 import java.util.stream.Collectors;
 
 public class VimCommand extends AbstractCommand {
+    public static final String ALIAS = "vim";
+    public static final String HELP = "Opens the referenced result in vim, using vertical splits if more than one "
+            + "result";
     private static final String ENTRIES_ARG = "entry";
 
-    private final EntryStore entryStore;
+    private final FederatedEntryStore entryStore;
     private final ResultReferenceTranslator referenceTranslator;
 
-    public VimCommand(EntryStore entryStore, ResultReferenceTranslator referenceTranslator) {
-        super("vim", "Opens the referenced result in vim, using vertical splits if more than one result");
+    public VimCommand(FederatedEntryStore entryStore, ResultReferenceTranslator referenceTranslator) {
+        super(ALIAS, HELP);
         this.entryStore = entryStore;
         this.referenceTranslator = referenceTranslator;
     }
@@ -42,7 +45,7 @@ public class VimCommand extends AbstractCommand {
             );
         } catch (ResultReferenceTranslator.ResultDereferenceException e) {
             System.out.println(e.getMessage());
-            return CommandResultMetadata.empty();
+            return CommandResultMetadata.failure();
         }
         List<String> filepaths = this.entryStore.getByIds(entryIds).stream()
                 .map(entry -> entry.getFilepath().toString())
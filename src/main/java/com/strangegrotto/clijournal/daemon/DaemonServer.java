@@ -0,0 +1,234 @@
+package com.strangegrotto.clijournal.daemon;
+
+import com.google.common.io.BaseEncoding;
+import com.strangegrotto.clijournal.commands.CommandParser;
+import com.strangegrotto.clijournal.commands.CommandResultMetadata;
+import com.strangegrotto.clijournal.commands.ListingRenderer;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps a warm command parser (and with it the entry store and results record) resident, running commands sent by
+ * the thin client in src/dist/bin so that one-shot invocations don't each pay for JVM startup and a reindex.
+ *
+ * The daemon listens on a loopback TCP port (Unix domain sockets need a newer JDK than the one we target), which it
+ * writes along with a random token to a file only the user can read; requests without the token are refused.
+ * A request is the token, whether the client's stdout is a terminal (1 or 0, which decides whether output is
+ * colored), the number of args, and then each arg, all on their own lines. The response is a header line of the exit
+ * status, the number of bytes of output, and the end args (e.g. the vim invocation that the client should exec),
+ * separated by {@link #HEADER_FIELD_SEPARATOR}, followed by the command's output (stdout and stderr together). The
+ * output is buffered until the command finishes so that its length is known up front, which lets the client copy it
+ * byte for byte (it can hold anything, e.g. the NULs of '--format null') rather than having to scan it for the end.
+ * Requests are handled one at a time, which is what lets the command's stdout and stderr be redirected.
+ */
+public class DaemonServer {
+    public static final String STOP_ARG = "--stop-daemon";
+    static final int SUCCESS_STATUS = 0;
+    static final int FAILURE_STATUS = 1;
+    static final char HEADER_FIELD_SEPARATOR = '\u001f';
+
+    private static final int TOKEN_BYTES = 32;
+    private static final String TERMINAL_FLAG = "1";
+    // Only a misbehaving client takes this long to send its request, and it'd be blocking every other client
+    private static final int REQUEST_READ_TIMEOUT_MILLIS = 5000;
+
+    private final CommandParser commandParser;
+    private final Path endpointFilepath;
+    private final String token;
+
+    /**
+     * @param commandParser Parser to run the requested commands with
+     * @param endpointFilepath File to write the daemon's port and token to, for clients to find it with
+     */
+    public DaemonServer(CommandParser commandParser, Path endpointFilepath) {
+        this.commandParser = commandParser;
+        this.endpointFilepath = endpointFilepath;
+        byte[] tokenBytes = new byte[TOKEN_BYTES];
+        new SecureRandom().nextBytes(tokenBytes);
+        this.token = BaseEncoding.base16().lowerCase().encode(tokenBytes);
+    }
+
+    /**
+     * Serves requests until a client sends {@link #STOP_ARG}
+     * @throws IOException if the daemon couldn't start listening or publish its endpoint
+     */
+    public void run() throws IOException {
+        try (ServerSocket serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress())) {
+            this.writeEndpointFile(serverSocket.getLocalPort());
+            Runtime.getRuntime().addShutdownHook(new Thread(this::deleteEndpointFile));
+            System.out.println("Daemon listening on port " + serverSocket.getLocalPort());
+
+            boolean stopRequested = false;
+            while (!stopRequested) {
+                try (Socket socket = serverSocket.accept()) {
+                    stopRequested = this.handleConnection(socket);
+                } catch (IOException e) {
+                    // Only that client is affected; keep serving the others
+                    System.out.println("Error handling daemon request: " + e.getMessage());
+                }
+            }
+        } finally {
+            this.deleteEndpointFile();
+        }
+    }
+
+    /**
+     * @return True if the client asked the daemon to stop
+     */
+    private boolean handleConnection(Socket socket) throws IOException {
+        socket.setSoTimeout(REQUEST_READ_TIMEOUT_MILLIS);
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8)
+        );
+        OutputStream socketOut = new BufferedOutputStream(socket.getOutputStream());
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream outputStream = new PrintStream(output, true, StandardCharsets.UTF_8.name());
+
+        Optional<Request> requestOpt = this.readRequest(reader);
+        if (!requestOpt.isPresent()) {
+            outputStream.println("Invalid daemon token; try restarting the daemon");
+            writeResponse(socketOut, FAILURE_STATUS, List.of(), output);
+            return false;
+        }
+        Request request = requestOpt.get();
+        if (request.args.equals(List.of(STOP_ARG))) {
+            outputStream.println("Daemon stopped");
+            writeResponse(socketOut, SUCCESS_STATUS, List.of(), output);
+            return true;
+        }
+
+        PrintStream originalOut = System.out;
+        PrintStream originalErr = System.err;
+        CommandResultMetadata result = CommandResultMetadata.failure();
+        System.setOut(outputStream);
+        // Argument errors and usage messages go to stderr
+        System.setErr(outputStream);
+        ListingRenderer.setStdoutIsTerminal(Optional.of(request.clientIsTerminal));
+        try {
+            result = this.commandParser.parse(request.args);
+        } catch (RuntimeException e) {
+            // One bad command mustn't take down the daemon for every later one
+            System.out.println("Error running command: " + e.getMessage());
+        } finally {
+            ListingRenderer.setStdoutIsTerminal(Optional.empty());
+            System.setErr(originalErr);
+            System.setOut(originalOut);
+        }
+        outputStream.flush();
+        writeResponse(
+                socketOut,
+                result.isSuccess() ? SUCCESS_STATUS : FAILURE_STATUS,
+                result.getEndArgs().orElse(List.of()),
+                output
+        );
+        return false;
+    }
+
+    private static class Request {
+        private final boolean clientIsTerminal;
+        private final List<String> args;
+
+        private Request(boolean clientIsTerminal, List<String> args) {
+            this.clientIsTerminal = clientIsTerminal;
+            this.args = args;
+        }
+    }
+
+    /**
+     * @return The request, or empty if it didn't have the right token
+     */
+    private Optional<Request> readRequest(BufferedReader reader) throws IOException {
+        String requestToken = readRequestLine(reader);
+        boolean tokenMatches = MessageDigest.isEqual(
+                requestToken.getBytes(StandardCharsets.UTF_8),
+                this.token.getBytes(StandardCharsets.UTF_8)
+        );
+        if (!tokenMatches) {
+            return Optional.empty();
+        }
+
+        boolean clientIsTerminal = TERMINAL_FLAG.equals(readRequestLine(reader));
+        int numArgs;
+        try {
+            numArgs = Integer.parseInt(readRequestLine(reader));
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed request: invalid number of args", e);
+        }
+        List<String> args = new ArrayList<>(numArgs);
+        for (int i = 0; i < numArgs; i++) {
+            args.add(readRequestLine(reader));
+        }
+        return Optional.of(new Request(clientIsTerminal, args));
+    }
+
+    private static void writeResponse(
+            OutputStream socketOut,
+            int exitStatus,
+            List<String> endArgs,
+            ByteArrayOutputStream output) throws IOException {
+        StringBuilder header = new StringBuilder()
+                .append(exitStatus)
+                .append(HEADER_FIELD_SEPARATOR)
+                .append(output.size());
+        for (String endArg : endArgs) {
+            header.append(HEADER_FIELD_SEPARATOR).append(endArg);
+        }
+        header.append('\n');
+        socketOut.write(header.toString().getBytes(StandardCharsets.UTF_8));
+        output.writeTo(socketOut);
+        socketOut.flush();
+    }
+
+    private void writeEndpointFile(int port) throws IOException {
+        Files.createDirectories(this.endpointFilepath.getParent());
+        Path tempFilepath = this.endpointFilepath.resolveSibling(this.endpointFilepath.getFileName() + ".tmp");
+        Files.deleteIfExists(tempFilepath);
+        try {
+            // Created unreadable by others from the start, so the token is never exposed
+            Files.createFile(
+                    tempFilepath,
+                    PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))
+            );
+        } catch (UnsupportedOperationException e) {
+            Files.createFile(tempFilepath);
+        }
+        Files.write(tempFilepath, List.of(Integer.toString(port), this.token), StandardCharsets.UTF_8);
+        Files.move(
+                tempFilepath,
+                this.endpointFilepath,
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE
+        );
+    }
+
+    private void deleteEndpointFile() {
+        try {
+            // Another daemon may have since taken over the endpoint file, in which case it isn't ours to delete
+            if (Files.isRegularFile(this.endpointFilepath)
+                    && Files.readAllLines(this.endpointFilepath, StandardCharsets.UTF_8).contains(this.token)) {
+                Files.delete(this.endpointFilepath);
+            }
+        } catch (IOException e) {
+            // Clients fall back to running the CLI directly if they can't connect, so a stale file is harmless
+        }
+    }
+
+    private static String readRequestLine(BufferedReader reader) throws IOException {
+        String line = reader.readLine();
+        if (line == null) {
+            throw new IOException("Malformed request: ended early");
+        }
+        return line;
+    }
+}
@@ -0,0 +1,175 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import java.util.*;
+
+/**
+ * Burkhard-Keller tree of strings under Levenshtein distance. Because edit distance obeys the triangle inequality,
+ * a search for strings within distance k of a query only needs to descend into the children whose edge distance is
+ * within k of the current node's distance to the query, which skips most of the tree for small k.
+ * Removed strings stay in the tree as dead nodes (a BK-tree can't have nodes taken out of the middle), and the tree
+ * is rebuilt once the dead nodes outnumber the live ones.
+ */
+class BkTree {
+    /**
+     * A string found by a search, with its distance to the query
+     */
+    static class Match {
+        private final String value;
+        private final int distance;
+
+        private Match(String value, int distance) {
+            this.value = value;
+            this.distance = distance;
+        }
+
+        String getValue() {
+            return value;
+        }
+
+        int getDistance() {
+            return distance;
+        }
+    }
+
+    private static class Node {
+        private final String value;
+        private boolean live;
+        // Edge distance -> child
+        private final Map<Integer, Node> children;
+
+        private Node(String value) {
+            this.value = value;
+            this.live = true;
+            this.children = new HashMap<>();
+        }
+    }
+
+    private Node root;
+    private final Map<String, Node> nodes;
+    private int numDead;
+
+    BkTree() {
+        this.root = null;
+        this.nodes = new HashMap<>();
+        this.numDead = 0;
+    }
+
+    void add(String value) {
+        Node existing = this.nodes.get(value);
+        if (existing != null) {
+            if (!existing.live) {
+                existing.live = true;
+                this.numDead--;
+            }
+            return;
+        }
+
+        Node newNode = new Node(value);
+        this.nodes.put(value, newNode);
+        if (this.root == null) {
+            this.root = newNode;
+            return;
+        }
+        Node current = this.root;
+        while (true) {
+            int distance = levenshteinDistance(value, current.value);
+            Node child = current.children.get(distance);
+            if (child == null) {
+                current.children.put(distance, newNode);
+                return;
+            }
+            current = child;
+        }
+    }
+
+    void remove(String value) {
+        Node node = this.nodes.get(value);
+        if (node == null || !node.live) {
+            return;
+        }
+        node.live = false;
+        this.numDead++;
+        if (this.numDead > this.nodes.size() / 2) {
+            this.rebuild();
+        }
+    }
+
+    void clear() {
+        this.root = null;
+        this.nodes.clear();
+        this.numDead = 0;
+    }
+
+    /**
+     * @param query String to search for
+     * @param maxDistance Maximum edit distance of the strings to return
+     * @return Every live string within the distance of the query, closest first (ties broken alphabetically)
+     */
+    List<Match> search(String query, int maxDistance) {
+        List<Match> matches = new ArrayList<>();
+        if (this.root == null) {
+            return matches;
+        }
+
+        Deque<Node> toVisit = new ArrayDeque<>();
+        toVisit.push(this.root);
+        while (!toVisit.isEmpty()) {
+            Node node = toVisit.pop();
+            int distance = levenshteinDistance(query, node.value);
+            if (node.live && distance <= maxDistance) {
+                matches.add(new Match(node.value, distance));
+            }
+            for (Map.Entry<Integer, Node> child : node.children.entrySet()) {
+                if (Math.abs(child.getKey() - distance) <= maxDistance) {
+                    toVisit.push(child.getValue());
+                }
+            }
+        }
+        matches.sort(Comparator.comparingInt(Match::getDistance).thenComparing(Match::getValue));
+        return matches;
+    }
+
+    private void rebuild() {
+        List<String> liveValues = new ArrayList<>(this.nodes.size() - this.numDead);
+        for (Node node : this.nodes.values()) {
+            if (node.live) {
+                liveValues.add(node.value);
+            }
+        }
+        this.clear();
+        liveValues.forEach(this::add);
+    }
+
+    /**
+     * @return Minimum number of single-character insertions, deletions, and substitutions turning one string into the
+     *  other
+     */
+    static int levenshteinDistance(String a, String b) {
+        if (a.length() < b.length()) {
+            String swap = a;
+            a = b;
+            b = swap;
+        }
+        // Two rows of the DP table, each as long as the shorter string
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char aChar = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int substitutionCost = aChar == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(
+                        Math.min(current[j - 1] + 1, previous[j] + 1),
+                        previous[j - 1] + substitutionCost
+                );
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
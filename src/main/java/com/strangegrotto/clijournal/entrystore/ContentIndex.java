@@ -0,0 +1,422 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * Inverted index over the tokenized bodies of journal entries, supporting relevance-ranked (BM25) search.
+ * The index is made of immutable {@link ContentSegment}s, optionally persisted to disk: (re-)indexed entries are
+ * written to a new small segment, and once there are too many segments they're compacted into one in the background.
+ */
+class ContentIndex {
+    // Standard BM25 tuning parameters
+    private static final double BM25_K1 = 1.2;
+    private static final double BM25_B = 0.75;
+    // Files at least this big are memory-mapped rather than read onto the heap
+    private static final long MMAP_THRESHOLD_BYTES = 64 * 1024;
+    // Longer tokens (e.g. encoded blobs) are never useful search terms, so they're not indexed
+    private static final int MAX_TOKEN_LENGTH = 64;
+    private static final int MAX_SEGMENTS_BEFORE_MERGE = 8;
+    private static final String SEGMENT_FILENAME_PREFIX = "segment-";
+    private static final String SEGMENT_FILENAME_SUFFIX = ".seg";
+
+    /**
+     * Pointer to the live version of an entry's body
+     */
+    private static class DocumentRef {
+        private final ContentSegment segment;
+        private final int ordinal;
+
+        private DocumentRef(ContentSegment segment, int ordinal) {
+            this.segment = segment;
+            this.ordinal = ordinal;
+        }
+
+        private boolean pointsTo(ContentSegment segment, int ordinal) {
+            return this.segment == segment && this.ordinal == ordinal;
+        }
+    }
+
+    /**
+     * Result of a background merge, waiting to be swapped in by the thread that owns the index
+     */
+    private static class CompletedMerge {
+        private final List<ContentSegment> inputs;
+        private final ContentSegment merged;
+
+        private CompletedMerge(List<ContentSegment> inputs, ContentSegment merged) {
+            this.inputs = inputs;
+            this.merged = merged;
+        }
+    }
+
+    private final Path journalDirpath;
+    private final Optional<Path> segmentsDirpath;
+    private final AtomicReference<CompletedMerge> completedMerge;
+
+    // All of the following are only touched by the thread that owns the index
+    private List<ContentSegment> segments;  // Oldest generation first
+    private final Map<String, DocumentRef> liveDocuments;
+    private long totalLiveLength;
+    private long nextGeneration;
+    private boolean loaded;
+    private boolean mergeInProgress;
+    private ExecutorService mergeExecutor;
+
+    /**
+     * @param journalDirpath Directory containing the entries whose filenames will be indexed
+     * @param segmentsDirpath Directory where segments are persisted between runs; if empty, the index will only be
+     *                        kept in memory
+     */
+    ContentIndex(Path journalDirpath, Optional<Path> segmentsDirpath) {
+        this.journalDirpath = journalDirpath;
+        this.segmentsDirpath = segmentsDirpath;
+        this.completedMerge = new AtomicReference<>();
+        this.segments = new ArrayList<>();
+        this.liveDocuments = new HashMap<>();
+        this.totalLiveLength = 0;
+        this.nextGeneration = 0;
+        this.loaded = false;
+        this.mergeInProgress = false;
+    }
+
+    /**
+     * @return Filenames of every indexed entry
+     */
+    Set<String> getIndexedFilenames() {
+        this.prepare();
+        return this.liveDocuments.keySet();
+    }
+
+    /**
+     * (Re-)indexes the bodies of the given entries, in parallel, writing them to a new segment; entries that haven't
+     * been modified since they were last indexed are skipped, and entries that no longer exist (or can't be read) are
+     * removed.
+     * @param filenames Filenames of entries in the journal directory
+     */
+    void indexDocuments(Collection<String> filenames) {
+        this.prepare();
+
+        Map<String, Long> indexedModifiedMillis = new HashMap<>();
+        for (String filename : filenames) {
+            DocumentRef ref = this.liveDocuments.get(filename);
+            if (ref != null) {
+                indexedModifiedMillis.put(filename, ref.segment.getModifiedMillis(ref.ordinal));
+            }
+        }
+        Map<String, Optional<ContentSegment.TokenizedDocument>> tokenized = filenames.parallelStream()
+                .map(filename -> this.tokenizeIfModified(filename, indexedModifiedMillis.get(filename)))
+                .filter(Optional::isPresent)
+                .map(Optional::get)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+        List<ContentSegment.TokenizedDocument> newDocuments = new ArrayList<>();
+        for (Map.Entry<String, Optional<ContentSegment.TokenizedDocument>> entry : tokenized.entrySet()) {
+            this.removeDocument(entry.getKey());
+            entry.getValue().ifPresent(newDocuments::add);
+        }
+        if (newDocuments.isEmpty()) {
+            return;
+        }
+
+        ContentSegment segment = ContentSegment.build(this.nextGeneration++, newDocuments);
+        this.segments.add(segment);
+        for (int ordinal = 0; ordinal < segment.size(); ordinal++) {
+            this.liveDocuments.put(segment.getFilename(ordinal), new DocumentRef(segment, ordinal));
+            this.totalLiveLength += segment.getLength(ordinal);
+        }
+        if (this.segmentsDirpath.isPresent()) {
+            try {
+                Files.createDirectories(this.segmentsDirpath.get());
+                segment.write(this.getSegmentFilepath(segment.getGeneration()));
+            } catch (IOException e) {
+                // Persistence is an optimization; worst case, these entries get re-indexed on the next run
+            }
+        }
+
+        this.maybeStartMerge();
+    }
+
+    void removeDocument(String filename) {
+        this.prepare();
+        DocumentRef ref = this.liveDocuments.remove(filename);
+        if (ref != null) {
+            this.totalLiveLength -= ref.segment.getLength(ref.ordinal);
+        }
+    }
+
+    /**
+     * @param query Free text to search for
+     * @return Filenames of entries containing at least one of the query's terms, most relevant first
+     */
+    List<String> search(String query) {
+        this.prepare();
+        Set<String> queryTerms = new HashSet<>(tokenize(CharBuffer.wrap(query)));
+        int numDocuments = this.liveDocuments.size();
+        if (numDocuments == 0) {
+            return new ArrayList<>();
+        }
+        double averageLength = Math.max(1.0, (double) this.totalLiveLength / numDocuments);
+
+        Map<String, Double> scores = new HashMap<>();
+        for (String term : queryTerms) {
+            // Superseded & deleted documents still appear in their segments' postings, so filter them out first
+            List<DocumentRef> matchingRefs = new ArrayList<>();
+            List<Integer> termFrequencies = new ArrayList<>();
+            for (ContentSegment segment : this.segments) {
+                int[] pairs = segment.getPostings(term);
+                for (int i = 0; i < pairs.length; i += 2) {
+                    DocumentRef ref = this.liveDocuments.get(segment.getFilename(pairs[i]));
+                    if (ref != null && ref.pointsTo(segment, pairs[i])) {
+                        matchingRefs.add(ref);
+                        termFrequencies.add(pairs[i + 1]);
+                    }
+                }
+            }
+
+            int documentFrequency = matchingRefs.size();
+            double idf = Math.log(1 + (numDocuments - documentFrequency + 0.5) / (documentFrequency + 0.5));
+            for (int i = 0; i < matchingRefs.size(); i++) {
+                DocumentRef ref = matchingRefs.get(i);
+                int termFrequency = termFrequencies.get(i);
+                int length = ref.segment.getLength(ref.ordinal);
+                double normalization = BM25_K1 * (1 - BM25_B + BM25_B * length / averageLength);
+                double termScore = idf * termFrequency * (BM25_K1 + 1) / (termFrequency + normalization);
+                scores.merge(ref.segment.getFilename(ref.ordinal), termScore, Double::sum);
+            }
+        }
+
+        Comparator<Map.Entry<String, Double>> byRelevance = Map.Entry.<String, Double>comparingByValue().reversed();
+        return scores.entrySet().stream()
+                .sorted(byRelevance.thenComparing(Map.Entry.comparingByKey()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Loads the persisted segments if that hasn't happened yet, and swaps in the result of any finished merge
+     */
+    private void prepare() {
+        if (!this.loaded) {
+            this.loadSegments();
+            this.loaded = true;
+        }
+
+        CompletedMerge merge = this.completedMerge.getAndSet(null);
+        if (merge == null) {
+            return;
+        }
+        this.mergeInProgress = false;
+
+        Set<ContentSegment> inputs = Collections.newSetFromMap(new IdentityHashMap<>());
+        inputs.addAll(merge.inputs);
+        List<ContentSegment> newSegments = new ArrayList<>();
+        newSegments.add(merge.merged);
+        for (ContentSegment segment : this.segments) {
+            if (!inputs.contains(segment)) {
+                newSegments.add(segment);
+            }
+        }
+        this.segments = newSegments;
+
+        // Documents that were superseded or removed while the merge was running must stay that way
+        Map<String, DocumentRef> mergedRefs = new HashMap<>();
+        for (int ordinal = 0; ordinal < merge.merged.size(); ordinal++) {
+            mergedRefs.put(merge.merged.getFilename(ordinal), new DocumentRef(merge.merged, ordinal));
+        }
+        for (Map.Entry<String, DocumentRef> liveDocument : this.liveDocuments.entrySet()) {
+            DocumentRef mergedRef = mergedRefs.get(liveDocument.getKey());
+            if (mergedRef != null && inputs.contains(liveDocument.getValue().segment)) {
+                liveDocument.setValue(mergedRef);
+            }
+        }
+    }
+
+    private void loadSegments() {
+        if (!this.segmentsDirpath.isPresent() || !Files.isDirectory(this.segmentsDirpath.get())) {
+            return;
+        }
+
+        List<ContentSegment> loadedSegments = new ArrayList<>();
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(this.segmentsDirpath.get())) {
+            for (Path filepath : dirStream) {
+                String filename = filepath.getFileName().toString();
+                if (!filename.startsWith(SEGMENT_FILENAME_PREFIX) || !filename.endsWith(SEGMENT_FILENAME_SUFFIX)) {
+                    // Leftovers from an interrupted write
+                    Files.deleteIfExists(filepath);
+                    continue;
+                }
+                try {
+                    loadedSegments.add(ContentSegment.read(filepath));
+                } catch (IOException e) {
+                    // The entries it contained will just get re-indexed
+                    Files.deleteIfExists(filepath);
+                }
+            }
+        } catch (IOException e) {
+            // Whatever we managed to load is still usable, and anything missing will be re-indexed
+        }
+
+        loadedSegments.sort(Comparator.comparingLong(ContentSegment::getGeneration));
+        for (ContentSegment segment : loadedSegments) {
+            for (int ordinal = 0; ordinal < segment.size(); ordinal++) {
+                DocumentRef superseded = this.liveDocuments.put(
+                        segment.getFilename(ordinal),
+                        new DocumentRef(segment, ordinal)
+                );
+                if (superseded != null) {
+                    this.totalLiveLength -= superseded.segment.getLength(superseded.ordinal);
+                }
+                this.totalLiveLength += segment.getLength(ordinal);
+            }
+            this.nextGeneration = Math.max(this.nextGeneration, segment.getGeneration() + 1);
+        }
+        this.segments = loadedSegments;
+        this.maybeStartMerge();
+    }
+
+    /**
+     * Compacts all the current segments into one on a background thread, if there are enough of them to be worth it
+     */
+    private void maybeStartMerge() {
+        if (this.mergeInProgress || this.segments.size() <= MAX_SEGMENTS_BEFORE_MERGE) {
+            return;
+        }
+        this.mergeInProgress = true;
+
+        List<ContentSegment> inputs = new ArrayList<>(this.segments);
+        // The segments are immutable, but the live documents aren't, so the merge thread gets its own copy
+        Map<String, DocumentRef> liveDocumentsSnapshot = new HashMap<>(this.liveDocuments);
+        long mergedGeneration = inputs.get(inputs.size() - 1).getGeneration();
+        if (this.mergeExecutor == null) {
+            this.mergeExecutor = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "content-index-merge");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        this.mergeExecutor.submit(() -> {
+            ContentSegment merged = ContentSegment.merge(
+                    mergedGeneration,
+                    inputs,
+                    (segment, ordinal) -> {
+                        DocumentRef ref = liveDocumentsSnapshot.get(segment.getFilename(ordinal));
+                        return ref != null && ref.pointsTo(segment, ordinal);
+                    }
+            );
+            if (this.segmentsDirpath.isPresent()) {
+                try {
+                    // The merged segment takes the place of the newest input, so an interrupted merge can never
+                    //  leave a directory where an older version of an entry supersedes a newer one
+                    merged.write(this.getSegmentFilepath(mergedGeneration));
+                    for (ContentSegment input : inputs) {
+                        if (input.getGeneration() != mergedGeneration) {
+                            Files.deleteIfExists(this.getSegmentFilepath(input.getGeneration()));
+                        }
+                    }
+                } catch (IOException e) {
+                    // The inputs are still on disk, so the next run will just merge them again
+                }
+            }
+            this.completedMerge.set(new CompletedMerge(inputs, merged));
+        });
+    }
+
+    private Path getSegmentFilepath(long generation) {
+        return this.segmentsDirpath.get().resolve(SEGMENT_FILENAME_PREFIX + generation + SEGMENT_FILENAME_SUFFIX);
+    }
+
+    /**
+     * @param filename Entry filename
+     * @param indexedModifiedMillis Modification time of the entry when it was last indexed, or null if it isn't indexed
+     * @return The (filename, document) pair, with an empty document if the entry no longer exists or couldn't be
+     *  read, or empty if the entry hasn't changed since it was indexed
+     */
+    private Optional<Map.Entry<String, Optional<ContentSegment.TokenizedDocument>>> tokenizeIfModified(
+            String filename,
+            Long indexedModifiedMillis) {
+        Path filepath = this.journalDirpath.resolve(filename);
+        Optional<ContentSegment.TokenizedDocument> document;
+        try {
+            long modifiedMillis = Files.getLastModifiedTime(filepath).toMillis();
+            if (indexedModifiedMillis != null && indexedModifiedMillis == modifiedMillis) {
+                return Optional.empty();
+            }
+
+            List<String> tokens = tokenize(readFile(filepath));
+            Map<String, Integer> termFrequencies = new HashMap<>();
+            for (String token : tokens) {
+                termFrequencies.merge(token, 1, Integer::sum);
+            }
+            document = Optional.of(new ContentSegment.TokenizedDocument(
+                    filename,
+                    modifiedMillis,
+                    tokens.size(),
+                    termFrequencies
+            ));
+        } catch (IOException e) {
+            // Entries that have disappeared or can't be read simply aren't searchable
+            document = Optional.empty();
+        }
+        return Optional.of(new AbstractMap.SimpleImmutableEntry<>(filename, document));
+    }
+
+    private static CharBuffer readFile(Path filepath) throws IOException {
+        ByteBuffer bytes;
+        try (FileChannel channel = FileChannel.open(filepath, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size >= MMAP_THRESHOLD_BYTES) {
+                bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            } else {
+                bytes = ByteBuffer.allocate((int) size);
+                while (bytes.hasRemaining() && channel.read(bytes) >= 0) {}
+                bytes.flip();
+            }
+        }
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        return decoder.decode(bytes);
+    }
+
+    /**
+     * Splits text into lowercased runs of letters & digits
+     */
+    static List<String> tokenize(CharBuffer text) {
+        List<String> tokens = new ArrayList<>();
+        StringBuilder token = new StringBuilder();
+        while (text.hasRemaining()) {
+            char c = text.get();
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (token.length() > 0) {
+                addToken(tokens, token);
+            }
+        }
+        if (token.length() > 0) {
+            addToken(tokens, token);
+        }
+        return tokens;
+    }
+
+    private static void addToken(List<String> tokens, StringBuilder token) {
+        if (token.length() <= MAX_TOKEN_LENGTH) {
+            tokens.add(token.toString());
+        }
+        token.setLength(0);
+    }
+}
@@ -0,0 +1,259 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Immutable chunk of the content index, covering the bodies of a fixed set of entries. Segments are written once and
+ * never modified; changed entries are written to newer segments, and old segments are compacted by merging.
+ */
+class ContentSegment {
+    private static final int MAGIC = 0x434A4353;  // "CJCS"
+    // Bump this whenever the on-disk format changes; segments with any other version are thrown away
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The tokenized body of a single entry, which will become a document in a segment
+     */
+    static class TokenizedDocument {
+        private final String filename;
+        private final long modifiedMillis;
+        private final int length;
+        private final Map<String, Integer> termFrequencies;
+
+        TokenizedDocument(String filename, long modifiedMillis, int length, Map<String, Integer> termFrequencies) {
+            this.filename = filename;
+            this.modifiedMillis = modifiedMillis;
+            this.length = length;
+            this.termFrequencies = termFrequencies;
+        }
+    }
+
+    /**
+     * Decides whether a document in a segment is still live (i.e. not deleted or superseded)
+     */
+    interface LiveDocumentFilter {
+        boolean test(ContentSegment segment, int ordinal);
+    }
+
+    private final long generation;
+    private final String[] filenames;
+    private final long[] modifiedMillis;
+    private final int[] lengths;
+    // term -> flattened (document ordinal, term frequency) pairs
+    private final Map<String, int[]> postings;
+
+    private ContentSegment(
+            long generation,
+            String[] filenames,
+            long[] modifiedMillis,
+            int[] lengths,
+            Map<String, int[]> postings) {
+        this.generation = generation;
+        this.filenames = filenames;
+        this.modifiedMillis = modifiedMillis;
+        this.lengths = lengths;
+        this.postings = postings;
+    }
+
+    /**
+     * Builds a new segment containing the given documents
+     * @param generation Generation of the segment; documents in higher generations supersede those in lower ones
+     */
+    static ContentSegment build(long generation, List<TokenizedDocument> documents) {
+        int numDocuments = documents.size();
+        String[] filenames = new String[numDocuments];
+        long[] modifiedMillis = new long[numDocuments];
+        int[] lengths = new int[numDocuments];
+        Map<String, List<int[]>> postingPairs = new HashMap<>();
+        for (int ordinal = 0; ordinal < numDocuments; ordinal++) {
+            TokenizedDocument document = documents.get(ordinal);
+            filenames[ordinal] = document.filename;
+            modifiedMillis[ordinal] = document.modifiedMillis;
+            lengths[ordinal] = document.length;
+            for (Map.Entry<String, Integer> termFrequency : document.termFrequencies.entrySet()) {
+                postingPairs.computeIfAbsent(termFrequency.getKey(), term -> new ArrayList<>())
+                        .add(new int[]{ ordinal, termFrequency.getValue() });
+            }
+        }
+
+        Map<String, int[]> postings = new HashMap<>(postingPairs.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<int[]>> termPairs : postingPairs.entrySet()) {
+            List<int[]> pairs = termPairs.getValue();
+            int[] flattened = new int[pairs.size() * 2];
+            for (int i = 0; i < pairs.size(); i++) {
+                flattened[2 * i] = pairs.get(i)[0];
+                flattened[2 * i + 1] = pairs.get(i)[1];
+            }
+            postings.put(termPairs.getKey(), flattened);
+        }
+        return new ContentSegment(generation, filenames, modifiedMillis, lengths, postings);
+    }
+
+    /**
+     * Compacts the given segments into one, keeping only the documents that are still live
+     * @param generation Generation of the merged segment
+     * @param segments Segments to merge
+     * @param isLive Decides whether the document with the given ordinal in the given segment is still live
+     */
+    static ContentSegment merge(long generation, List<ContentSegment> segments, LiveDocumentFilter isLive) {
+        List<String> filenames = new ArrayList<>();
+        List<Long> modifiedMillis = new ArrayList<>();
+        List<Integer> lengths = new ArrayList<>();
+        List<int[]> ordinalMappings = new ArrayList<>(segments.size());
+        for (ContentSegment segment : segments) {
+            int[] ordinalMapping = new int[segment.size()];
+            for (int ordinal = 0; ordinal < segment.size(); ordinal++) {
+                if (isLive.test(segment, ordinal)) {
+                    ordinalMapping[ordinal] = filenames.size();
+                    filenames.add(segment.filenames[ordinal]);
+                    modifiedMillis.add(segment.modifiedMillis[ordinal]);
+                    lengths.add(segment.lengths[ordinal]);
+                } else {
+                    ordinalMapping[ordinal] = -1;
+                }
+            }
+            ordinalMappings.add(ordinalMapping);
+        }
+
+        // Remap each segment's postings to the merged ordinals, dropping dead documents, then concatenate per term
+        Map<String, List<int[]>> remappedPostings = new HashMap<>();
+        for (int segmentIdx = 0; segmentIdx < segments.size(); segmentIdx++) {
+            int[] ordinalMapping = ordinalMappings.get(segmentIdx);
+            for (Map.Entry<String, int[]> termPostings : segments.get(segmentIdx).postings.entrySet()) {
+                int[] pairs = termPostings.getValue();
+                int[] remapped = new int[pairs.length];
+                int remappedLength = 0;
+                for (int i = 0; i < pairs.length; i += 2) {
+                    int newOrdinal = ordinalMapping[pairs[i]];
+                    if (newOrdinal >= 0) {
+                        remapped[remappedLength++] = newOrdinal;
+                        remapped[remappedLength++] = pairs[i + 1];
+                    }
+                }
+                if (remappedLength > 0) {
+                    remappedPostings.computeIfAbsent(termPostings.getKey(), term -> new ArrayList<>())
+                            .add(Arrays.copyOf(remapped, remappedLength));
+                }
+            }
+        }
+        Map<String, int[]> postings = new HashMap<>(remappedPostings.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<int[]>> termPostings : remappedPostings.entrySet()) {
+            int totalLength = termPostings.getValue().stream().mapToInt(pairs -> pairs.length).sum();
+            int[] concatenated = new int[totalLength];
+            int offset = 0;
+            for (int[] pairs : termPostings.getValue()) {
+                System.arraycopy(pairs, 0, concatenated, offset, pairs.length);
+                offset += pairs.length;
+            }
+            postings.put(termPostings.getKey(), concatenated);
+        }
+
+        return new ContentSegment(
+                generation,
+                filenames.toArray(new String[0]),
+                modifiedMillis.stream().mapToLong(Long::longValue).toArray(),
+                lengths.stream().mapToInt(Integer::intValue).toArray(),
+                postings
+        );
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    int size() {
+        return this.filenames.length;
+    }
+
+    String getFilename(int ordinal) {
+        return this.filenames[ordinal];
+    }
+
+    long getModifiedMillis(int ordinal) {
+        return this.modifiedMillis[ordinal];
+    }
+
+    int getLength(int ordinal) {
+        return this.lengths[ordinal];
+    }
+
+    /**
+     * @return Flattened (document ordinal, term frequency) pairs for the term, or an empty array if no document in
+     *  this segment contains it
+     */
+    int[] getPostings(String term) {
+        return this.postings.getOrDefault(term, new int[0]);
+    }
+
+    /**
+     * Atomically writes this segment to the given file
+     * @throws IOException if the segment couldn't be written
+     */
+    void write(Path filepath) throws IOException {
+        Path tempFilepath = filepath.resolveSibling(filepath.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFilepath)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(this.generation);
+
+            output.writeInt(this.filenames.length);
+            for (int ordinal = 0; ordinal < this.filenames.length; ordinal++) {
+                output.writeUTF(this.filenames[ordinal]);
+                output.writeLong(this.modifiedMillis[ordinal]);
+                output.writeInt(this.lengths[ordinal]);
+            }
+
+            output.writeInt(this.postings.size());
+            for (Map.Entry<String, int[]> termPostings : this.postings.entrySet()) {
+                output.writeUTF(termPostings.getKey());
+                int[] pairs = termPostings.getValue();
+                output.writeInt(pairs.length);
+                for (int value : pairs) {
+                    output.writeInt(value);
+                }
+            }
+        }
+        Files.move(tempFilepath, filepath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Reads a segment previously written with {@link #write(Path)}
+     * @throws IOException if the segment couldn't be read, or is corrupt or from another format version
+     */
+    static ContentSegment read(Path filepath) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(filepath)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a content segment of format version " + FORMAT_VERSION + ": " + filepath);
+            }
+            long generation = input.readLong();
+
+            int numDocuments = input.readInt();
+            String[] filenames = new String[numDocuments];
+            long[] modifiedMillis = new long[numDocuments];
+            int[] lengths = new int[numDocuments];
+            for (int ordinal = 0; ordinal < numDocuments; ordinal++) {
+                filenames[ordinal] = input.readUTF();
+                modifiedMillis[ordinal] = input.readLong();
+                lengths[ordinal] = input.readInt();
+            }
+
+            int numTerms = input.readInt();
+            Map<String, int[]> postings = new HashMap<>(numTerms * 4 / 3 + 1);
+            for (int i = 0; i < numTerms; i++) {
+                String term = input.readUTF();
+                int[] pairs = new int[input.readInt()];
+                for (int j = 0; j < pairs.length; j++) {
+                    pairs[j] = input.readInt();
+                }
+                postings.put(term, pairs);
+            }
+            return new ContentSegment(generation, filenames, modifiedMillis, lengths, postings);
+        } catch (RuntimeException e) {
+            throw new IOException("Corrupt content segment: " + filepath, e);
+        }
+    }
+}
@@ -1,29 +1,52 @@
 package com.strangegrotto.clijournal.entrystore;
 
 import java.nio.file.Path;
+import java.util.Optional;
 
 /**
  * Representation of a journal entry on the filesystem, returned by {@link EntryStore}
  */
 public class Entry {
+    // Separates the journal name from the filename in the IDs of entries from a FederatedEntryStore; it can't appear
+    //  in a filename, so the two can always be told apart
+    public static final String JOURNAL_ID_SEPARATOR = "/";
+
+    private final Optional<String> journalNameOpt;
     private final Path filepath;
     private final EntryMetadata metadata;
 
     public Entry(Path filepath, EntryMetadata metadata) {
+        this(Optional.empty(), filepath, metadata);
+    }
+
+    private Entry(Optional<String> journalNameOpt, Path filepath, EntryMetadata metadata) {
+        this.journalNameOpt = journalNameOpt;
         this.filepath = filepath;
         this.metadata = metadata;
     }
 
+    /**
+     * @param journalName Name of the journal that the entry is in, which its ID will be qualified with
+     * @return Copy of this entry with a journal-qualified ID
+     */
+    Entry withJournalName(String journalName) {
+        return new Entry(Optional.of(journalName), this.filepath, this.metadata);
+    }
+
     public Path getFilepath() {
         return filepath;
     }
 
+    /**
+     * @return The entry's filename, prefixed with its journal's name and {@link #JOURNAL_ID_SEPARATOR} if it came
+     *  from one of several journals
+     */
     public String getId() {
-        return this.filepath.getFileName().toString();
+        String filename = this.filepath.getFileName().toString();
+        return this.journalNameOpt.map(journalName -> journalName + JOURNAL_ID_SEPARATOR + filename).orElse(filename);
     }
 
     public EntryMetadata getMetadata() {
         return metadata;
     }
 }
-
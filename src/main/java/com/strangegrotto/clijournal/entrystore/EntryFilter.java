@@ -0,0 +1,336 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Decides which files in the journal directory are ignored (i.e. not entries), using gitignore-style rules:
+ *  - Blank lines and lines starting with '#' are skipped
+ *  - Rules are globs ('*', '?', and '[...]') matched against the whole filename, unless prefixed with 're:', in which
+ *    case they're regexes that must match the whole filename
+ *  - A '!' prefix re-includes files that an earlier rule ignored; the last rule that matches a filename wins
+ *  - Rules ending in '/' only apply to directories, which are never entries anyway
+ * All rules are compiled into a single pattern (unless a regex refers to its own groups, whose numbers that would
+ * shift), and decisions are cached per filename, since the same filenames are checked on every reindex.
+ */
+class EntryFilter {
+    static final String IGNORE_FILENAME = ".clijournalignore";
+    // Applied before the rules in the journal's ignore file, so that the file can override them
+    static final List<String> DEFAULT_RULES = Arrays.asList(
+            "*.swp",
+            ".git",
+            IGNORE_FILENAME
+    );
+    private static final String REGEX_RULE_PREFIX = "re:";
+
+    private static class Rule {
+        private final String regex;
+        private final boolean negated;
+
+        private Rule(String regex, boolean negated) {
+            this.regex = regex;
+            this.negated = negated;
+        }
+    }
+
+    private final List<String> ruleLines;
+    // Alternation of all the rules, last rule first, so that the first alternative to match is the rule that wins
+    private final Optional<Pattern> combinedPattern;
+    // Parallel arrays, one element per run of consecutive rules with the same polarity in combinedPattern
+    private final int[] runGroups;
+    private final boolean[] runNegated;
+    // Used instead of combinedPattern if the rules can't be combined (e.g. regexes with backreferences)
+    private final List<Pattern> rulePatterns;
+    private final List<Rule> rules;
+    private final Map<String, Boolean> decisionCache;
+
+    private EntryFilter(List<String> ruleLines, List<Rule> rules) {
+        this.ruleLines = ruleLines;
+        this.rules = rules;
+        this.decisionCache = new ConcurrentHashMap<>();
+
+        StringBuilder combinedRegex = new StringBuilder("(?:");
+        List<Integer> runGroups = new ArrayList<>();
+        List<Boolean> runNegated = new ArrayList<>();
+        List<Pattern> rulePatterns = new ArrayList<>(rules.size());
+        int nextGroup = 1;
+        for (int i = rules.size() - 1; i >= 0; i--) {
+            Rule rule = rules.get(i);
+            Pattern rulePattern = Pattern.compile(rule.regex);
+            rulePatterns.add(rulePattern);
+
+            boolean startsRun = runNegated.isEmpty() || runNegated.get(runNegated.size() - 1) != rule.negated;
+            if (startsRun) {
+                if (!runNegated.isEmpty()) {
+                    combinedRegex.append(")|");
+                }
+                combinedRegex.append("(");
+                runGroups.add(nextGroup++);
+                runNegated.add(rule.negated);
+            } else {
+                combinedRegex.append("|");
+            }
+            combinedRegex.append("(?:").append(rule.regex).append(")");
+            nextGroup += rulePattern.matcher("").groupCount();
+        }
+        combinedRegex.append(runNegated.isEmpty() ? "(?!))" : "))");
+
+        Optional<Pattern> combinedPattern = Optional.empty();
+        if (rules.stream().noneMatch(rule -> refersToGroups(rule.regex))) {
+            try {
+                combinedPattern = Optional.of(Pattern.compile(combinedRegex.toString()));
+            } catch (PatternSyntaxException e) {
+                // Checked one by one instead
+            }
+        }
+        this.combinedPattern = combinedPattern;
+        this.runGroups = runGroups.stream().mapToInt(Integer::intValue).toArray();
+        this.runNegated = new boolean[runNegated.size()];
+        for (int i = 0; i < this.runNegated.length; i++) {
+            this.runNegated[i] = runNegated.get(i);
+        }
+        this.rulePatterns = rulePatterns;
+    }
+
+    /**
+     * Builds a filter from the default rules followed by the rules in the journal's ignore file, if it has one
+     * @param journalDirpath Journal directory
+     * @throws IOException if the ignore file couldn't be read or contains an invalid rule
+     */
+    static EntryFilter load(Path journalDirpath) throws IOException {
+        List<String> ruleLines = new ArrayList<>(DEFAULT_RULES);
+        Path ignoreFilepath = journalDirpath.resolve(IGNORE_FILENAME);
+        if (!Files.isRegularFile(ignoreFilepath)) {
+            return compile(ruleLines);
+        }
+
+        ruleLines.addAll(Files.readAllLines(ignoreFilepath));
+        try {
+            return compile(ruleLines);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid rule in " + ignoreFilepath + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param ruleLines Lines of rules, in the ignore file's syntax
+     * @throws IllegalArgumentException if a rule is invalid
+     */
+    static EntryFilter compile(List<String> ruleLines) {
+        List<Rule> rules = new ArrayList<>();
+        for (String line : ruleLines) {
+            parseRule(line).ifPresent(rules::add);
+        }
+        return new EntryFilter(new ArrayList<>(ruleLines), rules);
+    }
+
+    /**
+     * @return The rule lines the filter was built from (including comments), for detecting changes to the rules
+     */
+    List<String> getRuleLines() {
+        return Collections.unmodifiableList(this.ruleLines);
+    }
+
+    /**
+     * @param filename Name of a file in the journal directory
+     * @return True if the file isn't a journal entry
+     */
+    boolean isIgnored(String filename) {
+        Boolean decision = this.decisionCache.get(filename);
+        if (decision == null) {
+            decision = this.decide(filename);
+            this.decisionCache.put(filename, decision);
+        }
+        return decision;
+    }
+
+    private boolean decide(String filename) {
+        if (!this.combinedPattern.isPresent()) {
+            for (int i = 0; i < this.rulePatterns.size(); i++) {
+                if (this.rulePatterns.get(i).matcher(filename).matches()) {
+                    return !this.rules.get(this.rules.size() - 1 - i).negated;
+                }
+            }
+            return false;
+        }
+
+        Matcher matcher = this.combinedPattern.get().matcher(filename);
+        if (!matcher.matches()) {
+            return false;
+        }
+        for (int run = 0; run < this.runGroups.length; run++) {
+            if (matcher.start(this.runGroups[run]) >= 0) {
+                return !this.runNegated[run];
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Conservatively detects regexes that would behave differently inside the combined pattern: numbered
+     * backreferences would point at the wrong group once the rules before them add theirs, and named groups can't be
+     * repeated across rules
+     * @return True if the regex might contain a backreference or a named group
+     */
+    private static boolean refersToGroups(String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length()) {
+                char escaped = regex.charAt(++i);
+                if (escaped == 'Q') {
+                    // Everything up to \E is literal
+                    int quoteEnd = regex.indexOf("\\E", i);
+                    i = quoteEnd < 0 ? regex.length() : quoteEnd + 1;
+                } else if ((escaped >= '1' && escaped <= '9') || escaped == 'k') {
+                    return true;
+                }
+            } else if (c == '(' && regex.startsWith("?<", i + 1) && i + 3 < regex.length()
+                    && Character.isLetter(regex.charAt(i + 3))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Optional<Rule> parseRule(String line) {
+        String rule = stripTrailingWhitespace(line);
+        if (rule.isEmpty() || rule.startsWith("#")) {
+            return Optional.empty();
+        }
+
+        boolean negated = rule.startsWith("!");
+        if (negated) {
+            rule = rule.substring(1);
+        }
+
+        if (rule.startsWith(REGEX_RULE_PREFIX)) {
+            String regex = rule.substring(REGEX_RULE_PREFIX.length());
+            try {
+                Pattern.compile(regex);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException("Invalid regex in rule '" + line + "': " + e.getDescription());
+            }
+            return Optional.of(new Rule(regex, negated));
+        }
+
+        if (rule.endsWith("/")) {
+            return Optional.empty();
+        }
+        // The journal is flat, so anchoring a rule to its root or to any depth means the same as not doing so
+        if (rule.startsWith("/")) {
+            rule = rule.substring(1);
+        } else if (rule.startsWith("**/")) {
+            rule = rule.substring(3);
+        }
+        return Optional.of(new Rule(globToRegex(rule), negated));
+    }
+
+    /**
+     * Strips trailing whitespace, except for whitespace escaped with a backslash
+     */
+    private static String stripTrailingWhitespace(String line) {
+        int end = line.length();
+        while (end > 0 && Character.isWhitespace(line.charAt(end - 1))) {
+            end--;
+        }
+        if (end < line.length() && end > 0 && line.charAt(end - 1) == '\\') {
+            end++;
+        }
+        return line.substring(0, end);
+    }
+
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder();
+        int i = 0;
+        while (i < glob.length()) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+                        regex.append(".*");
+                        i += 2;
+                    } else {
+                        regex.append("[^/]*");
+                        i++;
+                    }
+                    break;
+                case '?':
+                    regex.append("[^/]");
+                    i++;
+                    break;
+                case '[':
+                    int classEnd = findClassEnd(glob, i);
+                    if (classEnd < 0) {
+                        regex.append("\\[");
+                        i++;
+                    } else {
+                        regex.append(classToRegex(glob.substring(i + 1, classEnd)));
+                        i = classEnd + 1;
+                    }
+                    break;
+                case '\\':
+                    if (i + 1 < glob.length()) {
+                        regex.append(Pattern.quote(String.valueOf(glob.charAt(i + 1))));
+                        i += 2;
+                    } else {
+                        regex.append("\\\\");
+                        i++;
+                    }
+                    break;
+                default:
+                    int literalEnd = i;
+                    while (literalEnd < glob.length() && "*?[\\".indexOf(glob.charAt(literalEnd)) < 0) {
+                        literalEnd++;
+                    }
+                    regex.append(Pattern.quote(glob.substring(i, literalEnd)));
+                    i = literalEnd;
+            }
+        }
+        return regex.toString();
+    }
+
+    /**
+     * @return Index of the ']' closing the character class opened at the given index, or -1 if it's unterminated
+     */
+    private static int findClassEnd(String glob, int openIdx) {
+        int i = openIdx + 1;
+        if (i < glob.length() && (glob.charAt(i) == '!' || glob.charAt(i) == '^')) {
+            i++;
+        }
+        // A ']' right after the opening (or its negation) is part of the class
+        if (i < glob.length() && glob.charAt(i) == ']') {
+            i++;
+        }
+        while (i < glob.length() && glob.charAt(i) != ']') {
+            i++;
+        }
+        return i < glob.length() ? i : -1;
+    }
+
+    private static String classToRegex(String classBody) {
+        StringBuilder regex = new StringBuilder("[");
+        int i = 0;
+        if (classBody.startsWith("!") || classBody.startsWith("^")) {
+            regex.append('^');
+            i++;
+        }
+        for (; i < classBody.length(); i++) {
+            char c = classBody.charAt(i);
+            // Everything but ranges is literal in a glob class, but several characters are special in a regex one
+            if (c == '-' && i > 0 && i < classBody.length() - 1) {
+                regex.append(c);
+            } else if (Character.isLetterOrDigit(c)) {
+                regex.append(c);
+            } else {
+                regex.append('\\').append(c);
+            }
+        }
+        return regex.append(']').toString();
+    }
+}
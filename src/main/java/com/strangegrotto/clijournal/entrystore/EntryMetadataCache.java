@@ -0,0 +1,155 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import com.google.common.collect.Sets;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Versioned on-disk cache of parsed entry metadata, so that startup doesn't need to re-parse every filename in
+ * the journal
+ */
+class EntryMetadataCache {
+    private static final int MAGIC = 0x434A4D43;  // "CJMC"
+    // Bump this whenever the on-disk format changes; caches with any other version are thrown away
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Contents of the cache file
+     */
+    static class Snapshot {
+        private final long dirModifiedMillis;
+        private final Map<String, EntryMetadata> filenamesAndMetadata;
+
+        Snapshot(long dirModifiedMillis, Map<String, EntryMetadata> filenamesAndMetadata) {
+            this.dirModifiedMillis = dirModifiedMillis;
+            this.filenamesAndMetadata = filenamesAndMetadata;
+        }
+
+        /**
+         * @return Modification time of the journal directory when the snapshot was taken, or a negative value if
+         *  the modification time can't be trusted to detect later changes
+         */
+        long getDirModifiedMillis() {
+            return dirModifiedMillis;
+        }
+
+        Map<String, EntryMetadata> getFilenamesAndMetadata() {
+            return filenamesAndMetadata;
+        }
+    }
+
+    private final Path cacheFilepath;
+    private final String fingerprint;
+
+    /**
+     * @param cacheFilepath File where the cache will be stored
+     * @param fingerprint String identifying everything that the cached values depend on (journal location, parsing
+     *                    configuration, etc.); a cache written with a different fingerprint is considered stale
+     */
+    EntryMetadataCache(Path cacheFilepath, String fingerprint) {
+        this.cacheFilepath = cacheFilepath;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * @return The cached snapshot, or empty if no cache exists or the cache is corrupt, stale, or from another
+     *  format version
+     */
+    Optional<Snapshot> load() {
+        if (!Files.isRegularFile(this.cacheFilepath)) {
+            return Optional.empty();
+        }
+
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.cacheFilepath)))) {
+            if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION) {
+                return Optional.empty();
+            }
+            if (!this.fingerprint.equals(input.readUTF())) {
+                return Optional.empty();
+            }
+            long dirModifiedMillis = input.readLong();
+
+            int numEntries = input.readInt();
+            Map<String, EntryMetadata> filenamesAndMetadata = new HashMap<>(numEntries * 4 / 3 + 1);
+            for (int i = 0; i < numEntries; i++) {
+                String filename = input.readUTF();
+                filenamesAndMetadata.put(filename, readMetadata(input));
+            }
+            return Optional.of(new Snapshot(dirModifiedMillis, filenamesAndMetadata));
+        } catch (IOException | RuntimeException e) {
+            // Any problem reading the cache just means we fall back to a full rebuild
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Atomically replaces the cache file with the given values
+     * @throws IOException if the cache couldn't be written
+     */
+    void save(Snapshot snapshot) throws IOException {
+        Files.createDirectories(this.cacheFilepath.getParent());
+        Path tempFilepath = this.cacheFilepath.resolveSibling(this.cacheFilepath.getFileName() + ".tmp");
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFilepath)))) {
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeUTF(this.fingerprint);
+            output.writeLong(snapshot.getDirModifiedMillis());
+
+            Map<String, EntryMetadata> filenamesAndMetadata = snapshot.getFilenamesAndMetadata();
+            output.writeInt(filenamesAndMetadata.size());
+            for (Map.Entry<String, EntryMetadata> entry : filenamesAndMetadata.entrySet()) {
+                output.writeUTF(entry.getKey());
+                writeMetadata(output, entry.getValue());
+            }
+        }
+        Files.move(tempFilepath, this.cacheFilepath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeMetadata(DataOutputStream output, EntryMetadata metadata) throws IOException {
+        output.writeUTF(metadata.getNameSansExt());
+        output.writeUTF(metadata.getExtension());
+
+        Optional<LocalDateTime> timestampOpt = metadata.getCreationTimestamp();
+        output.writeBoolean(timestampOpt.isPresent());
+        if (timestampOpt.isPresent()) {
+            LocalDateTime timestamp = timestampOpt.get();
+            output.writeLong(timestamp.toEpochSecond(ZoneOffset.UTC));
+            output.writeInt(timestamp.getNano());
+        }
+
+        Set<String> tags = metadata.getTags();
+        output.writeInt(tags.size());
+        for (String tag : tags) {
+            output.writeUTF(tag);
+        }
+    }
+
+    private static EntryMetadata readMetadata(DataInputStream input) throws IOException {
+        String nameSansExt = input.readUTF();
+        String extension = input.readUTF();
+
+        Optional<LocalDateTime> creationTimestamp = Optional.empty();
+        if (input.readBoolean()) {
+            long epochSecond = input.readLong();
+            int nanos = input.readInt();
+            creationTimestamp = Optional.of(LocalDateTime.ofEpochSecond(epochSecond, nanos, ZoneOffset.UTC));
+        }
+
+        int numTags = input.readInt();
+        Set<String> tags = Sets.newHashSetWithExpectedSize(numTags);
+        for (int i = 0; i < numTags; i++) {
+            tags.add(input.readUTF());
+        }
+
+        return new EntryMetadata(nameSansExt, extension, creationTimestamp, tags);
+    }
+}
@@ -1,10 +1,11 @@
 package com.strangegrotto.clijournal.entrystore;
 
 import com.google.common.base.Preconditions;
-import com.google.common.collect.Sets;
-import com.google.common.io.Files;
 
+import java.text.ParsePosition;
 import java.time.LocalDateTime;
+import java.time.Month;
+import java.time.Year;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.*;
@@ -17,11 +18,13 @@ class EntryMetadataFormatter {
     private final String metadataSeparator;
     private final String tagSeparator;
     private final List<DateTimeFormatter> parseFormatters;
+    // Parallel to parseFormatters; null where the format is too complex to be parsed without the formatter
+    private final List<TimestampShape> parseShapes;
     private final DateTimeFormatter formatFormatter;
 
     /**
-     * @param metadataSeparator String to use to separate metadata elements in filename
-     * @param tagSeparator String to use to separate tags in filename
+     * @param metadataSeparator String to use to separate metadata elements in filename (a literal, not a regex)
+     * @param tagSeparator String to use to separate tags in filename (a literal, not a regex)
      * @param acceptedTimestampFormats Timestamp formats that we'll accept when parsing entry timestamp format.
      * @param preferredTimestampFormat Format we'll use when formatting timstamp when writing a filename
      */
@@ -49,31 +52,37 @@ class EntryMetadataFormatter {
 
         // For simplicity, rather than checking if preferredTimestampFormat is contained in acceptedTimestampFormats,
         //  just add it in
-        List<DateTimeFormatter> parseFormatters = acceptedTimestampFormats.stream()
+        List<String> parseFormats = new ArrayList<>(acceptedTimestampFormats);
+        parseFormats.add(preferredTimestampFormat);
+        this.parseFormatters = parseFormats.stream()
                 .map(DateTimeFormatter::ofPattern)
                 .collect(Collectors.toList());
-        parseFormatters.add(this.formatFormatter);
-        this.parseFormatters = parseFormatters;
+        this.parseShapes = parseFormats.stream()
+                .map(format -> TimestampShape.compile(format).orElse(null))
+                .collect(Collectors.toList());
     }
 
+    /**
+     * Parses a filename of the form name~timestamp~tag1,tag2.ext in a single pass, without regexes or exceptions
+     */
     public EntryMetadata parseMetadata(String filename) {
-        String nameMinusExt = Files.getNameWithoutExtension(filename);
-        String extension = Files.getFileExtension(filename);
+        int extensionDotIdx = filename.lastIndexOf('.');
+        String nameMinusExt = extensionDotIdx < 0 ? filename : filename.substring(0, extensionDotIdx);
+        String extension = extensionDotIdx < 0 ? "" : filename.substring(extensionDotIdx + 1);
 
-        String[] nameFragments = nameMinusExt.split(this.metadataSeparator);
-        String nameSansExt = nameFragments[0];
+        // Fragments are name, timestamp, and tags; anything after a third separator is ignored
+        int separatorLength = this.metadataSeparator.length();
+        int nameEnd = indexOfOrEnd(nameMinusExt, this.metadataSeparator, 0);
+        int timestampStart = Math.min(nameEnd + separatorLength, nameMinusExt.length());
+        int timestampEnd = indexOfOrEnd(nameMinusExt, this.metadataSeparator, timestampStart);
+        int tagsStart = Math.min(timestampEnd + separatorLength, nameMinusExt.length());
+        int tagsEnd = indexOfOrEnd(nameMinusExt, this.metadataSeparator, tagsStart);
 
-        String creationTimestampStr = nameFragments.length >= 2 ? nameFragments[1] : "";
-        Optional<LocalDateTime> creationTimestamp = Optional.empty();
-        for (DateTimeFormatter parseFormatter : this.parseFormatters) {
-            try {
-                creationTimestamp = Optional.of(LocalDateTime.parse(creationTimestampStr, parseFormatter));
-                break;
-            } catch (DateTimeParseException e) {}
-        }
-
-        String tagsStr = nameFragments.length >= 3 ? nameFragments[2] : "";
-        Set<String> tags = tagsStr.length() > 0 ? Sets.newHashSet(tagsStr.split(this.tagSeparator)) : Sets.newHashSet();
+        String nameSansExt = nameMinusExt.substring(0, nameEnd);
+        Optional<LocalDateTime> creationTimestamp = this.parseTimestamp(
+                nameMinusExt.substring(timestampStart, timestampEnd)
+        );
+        Set<String> tags = this.parseTags(nameMinusExt, tagsStart, tagsEnd);
 
         return new EntryMetadata(
                 nameSansExt,
@@ -101,4 +110,195 @@ class EntryMetadataFormatter {
         String extension = metadata.getExtension();
         return extension.length() > 0 ? extensionLess + "." + metadata.getExtension() : extensionLess;
     }
+
+    /**
+     * Tries each accepted format in order, taking the first that parses
+     */
+    private Optional<LocalDateTime> parseTimestamp(String timestampStr) {
+        for (int i = 0; i < this.parseFormatters.size(); i++) {
+            TimestampShape shape = this.parseShapes.get(i);
+            if (shape != null && timestampStr.length() <= shape.getLength()) {
+                // At or under the shape's length, the formatter can only parse what the shape matches
+                if (shape.matches(timestampStr)) {
+                    Optional<LocalDateTime> timestamp = shape.resolve(timestampStr);
+                    if (timestamp.isPresent()) {
+                        return timestamp;
+                    }
+                }
+                continue;
+            }
+
+            // Unusual formats and inputs (e.g. years past 9999) fall back to the formatter, checking that the text
+            //  is syntactically valid first so that only out-of-range field values can throw
+            DateTimeFormatter parseFormatter = this.parseFormatters.get(i);
+            ParsePosition position = new ParsePosition(0);
+            if (parseFormatter.parseUnresolved(timestampStr, position) == null
+                    || position.getErrorIndex() >= 0
+                    || position.getIndex() != timestampStr.length()) {
+                continue;
+            }
+            try {
+                return Optional.of(LocalDateTime.parse(timestampStr, parseFormatter));
+            } catch (DateTimeParseException e) {}
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Splits the given region of the string on the tag separator, with the same results as String#split (i.e.
+     *  trailing empty tags are dropped but others are kept)
+     */
+    private Set<String> parseTags(String str, int start, int end) {
+        Set<String> tags = new HashSet<>();
+        boolean hasPendingEmptyTag = false;
+        int tagStart = start;
+        while (tagStart < end) {
+            int tagEnd = str.indexOf(this.tagSeparator, tagStart);
+            if (tagEnd < 0 || tagEnd + this.tagSeparator.length() > end) {
+                tagEnd = end;
+            }
+            if (tagEnd == tagStart) {
+                hasPendingEmptyTag = true;
+            } else {
+                if (hasPendingEmptyTag) {
+                    tags.add("");
+                    hasPendingEmptyTag = false;
+                }
+                tags.add(str.substring(tagStart, tagEnd));
+            }
+            tagStart = tagEnd + this.tagSeparator.length();
+        }
+        return tags;
+    }
+
+    private static int indexOfOrEnd(String str, String substr, int fromIdx) {
+        int idx = str.indexOf(substr, fromIdx);
+        return idx < 0 ? str.length() : idx;
+    }
+
+    /**
+     * Fixed-width layout of a timestamp format made of only numeric fields and literals (e.g. "yyyy-MM-dd_HH-mm"),
+     * which lets timestamps be recognized by their length and punctuation and parsed digit-by-digit. Field values
+     * are resolved the same way as DateTimeFormatter's default SMART resolver style does.
+     */
+    private static class TimestampShape {
+        private static final String RESERVED_PATTERN_CHARS = "[]{}#'";
+        private static final String FIELD_LETTERS = "yMdHms";
+        private static final int[] FIELD_WIDTHS = { 4, 2, 2, 2, 2, 2 };
+        private static final int YEAR = 0;
+        private static final int MONTH = 1;
+        private static final int DAY = 2;
+        private static final int HOUR = 3;
+        private static final int MINUTE = 4;
+        private static final int SECOND = 5;
+
+        // The literal character at each position, or 0 where there's a digit
+        private final char[] literals;
+        // Offset of each field in FIELD_LETTERS order, or -1 if the format doesn't contain it
+        private final int[] fieldOffsets;
+
+        private TimestampShape(char[] literals, int[] fieldOffsets) {
+            this.literals = literals;
+            this.fieldOffsets = fieldOffsets;
+        }
+
+        /**
+         * @param pattern DateTimeFormatter pattern
+         * @return The shape of the pattern, or empty if the pattern uses anything other than yyyy, MM, dd, HH, mm,
+         *  ss, and literal characters
+         */
+        static Optional<TimestampShape> compile(String pattern) {
+            StringBuilder literals = new StringBuilder();
+            int[] fieldOffsets = { -1, -1, -1, -1, -1, -1 };
+            int i = 0;
+            while (i < pattern.length()) {
+                char c = pattern.charAt(i);
+                if (RESERVED_PATTERN_CHARS.indexOf(c) >= 0) {
+                    return Optional.empty();
+                }
+                if ((c < 'A' || c > 'Z') && (c < 'a' || c > 'z')) {
+                    literals.append(c);
+                    i++;
+                    continue;
+                }
+
+                int runEnd = i;
+                while (runEnd < pattern.length() && pattern.charAt(runEnd) == c) {
+                    runEnd++;
+                }
+                int field = FIELD_LETTERS.indexOf(c);
+                if (field < 0 || runEnd - i != FIELD_WIDTHS[field] || fieldOffsets[field] >= 0) {
+                    return Optional.empty();
+                }
+                fieldOffsets[field] = literals.length();
+                for (int j = i; j < runEnd; j++) {
+                    literals.append((char) 0);
+                }
+                i = runEnd;
+            }
+
+            // Formats without a full date and an hour and minute are left to the formatter to resolve
+            for (int field = YEAR; field <= MINUTE; field++) {
+                if (fieldOffsets[field] < 0) {
+                    return Optional.empty();
+                }
+            }
+            return Optional.of(new TimestampShape(literals.toString().toCharArray(), fieldOffsets));
+        }
+
+        int getLength() {
+            return this.literals.length;
+        }
+
+        /**
+         * @return True if the string has this shape's length, with ASCII digits and literals in the right places
+         */
+        boolean matches(String str) {
+            if (str.length() != this.literals.length) {
+                return false;
+            }
+            for (int i = 0; i < this.literals.length; i++) {
+                char c = str.charAt(i);
+                if (this.literals[i] == 0 ? (c < '0' || c > '9') : c != this.literals[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @param str String that {@link #matches(String)} this shape
+         * @return The timestamp, or empty if a field is out of range
+         */
+        Optional<LocalDateTime> resolve(String str) {
+            int year = this.parseField(str, YEAR);
+            int month = this.parseField(str, MONTH);
+            int day = this.parseField(str, DAY);
+            int hour = this.parseField(str, HOUR);
+            int minute = this.parseField(str, MINUTE);
+            int second = this.fieldOffsets[SECOND] < 0 ? 0 : this.parseField(str, SECOND);
+            if (year < 1 || month < 1 || month > 12 || day < 1 || day > 31 || minute > 59 || second > 59) {
+                return Optional.empty();
+            }
+
+            // Like the SMART resolver, clamp days past the end of the month and accept 24:00 as the next midnight
+            day = Math.min(day, Month.of(month).length(Year.isLeap(year)));
+            if (hour == 24 && minute == 0 && second == 0) {
+                return Optional.of(LocalDateTime.of(year, month, day, 0, 0).plusDays(1));
+            }
+            if (hour > 23) {
+                return Optional.empty();
+            }
+            return Optional.of(LocalDateTime.of(year, month, day, hour, minute, second));
+        }
+
+        private int parseField(String str, int field) {
+            int offset = this.fieldOffsets[field];
+            int value = 0;
+            for (int i = offset; i < offset + FIELD_WIDTHS[field]; i++) {
+                value = value * 10 + (str.charAt(i) - '0');
+            }
+            return value;
+        }
+    }
 }
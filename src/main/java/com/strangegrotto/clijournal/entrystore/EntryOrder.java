@@ -0,0 +1,29 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import java.util.Comparator;
+
+/**
+ * Orders that {@link EntryStore} keeps its entries sorted in, so that they can be listed without sorting
+ */
+public enum EntryOrder {
+    // Entries without a timestamp sort as if they were created at the start of the Unix epoch
+    TIME(Comparator.comparing(
+            entry -> entry.getMetadata().getCreationTimestamp().orElse(EntryStore.MISSING_TIMESTAMP_SORT_VALUE)
+    )),
+    NAME(Comparator.comparing(
+            entry -> entry.getMetadata().getNameSansExt()
+    ));
+
+    private final Comparator<Entry> comparator;
+
+    EntryOrder(Comparator<Entry> comparator) {
+        this.comparator = comparator;
+    }
+
+    /**
+     * @return Comparator for sorting entries that didn't come from one of the store's ordered views
+     */
+    public Comparator<Entry> getComparator() {
+        return this.comparator;
+    }
+}
@@ -0,0 +1,32 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Query matching the entries that satisfy all of its predicates, which {@link EntryStore#executeQuery(EntryQuery)}
+ * evaluates in whichever order it estimates to be cheapest
+ */
+public class EntryQuery {
+    private final List<QueryPredicate> predicates;
+
+    /**
+     * @param predicates Predicates that entries must all match (an empty list matches every entry)
+     */
+    public EntryQuery(List<QueryPredicate> predicates) {
+        this.predicates = new ArrayList<>(predicates);
+    }
+
+    public List<QueryPredicate> getPredicates() {
+        return Collections.unmodifiableList(this.predicates);
+    }
+
+    @Override
+    public String toString() {
+        return this.predicates.stream()
+                .map(QueryPredicate::toString)
+                .collect(Collectors.joining(" "));
+    }
+}
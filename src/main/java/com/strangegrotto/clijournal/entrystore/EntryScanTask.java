@@ -0,0 +1,140 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import com.strangegrotto.clijournal.metrics.AllocationCounter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Fork-join task that filters, stats, and parses a batch of paths from the journal directory, producing a partial
+ * index of filename -> metadata to be merged with the other batches' once the directory listing is complete
+ */
+class EntryScanTask extends RecursiveTask<Map<String, EntryMetadata>> {
+    private static final long serialVersionUID = 1L;
+
+    // Below this many paths, it's cheaper to do the work than to split it
+    private static final int SPLIT_THRESHOLD = 256;
+
+    private final List<Path> paths;
+    private final Predicate<Path> entryFilter;
+    private final Map<String, EntryMetadata> knownMetadata;
+    private final EntryMetadataFormatter metadataFormatter;
+    private final ScanStats stats;
+
+    /**
+     * Time and allocation spent filtering and parsing, summed over every batch (and so over every worker thread)
+     */
+    static class ScanStats {
+        private final LongAdder filterNanos = new LongAdder();
+        private final LongAdder filterAllocatedBytes = new LongAdder();
+        private final LongAdder parseNanos = new LongAdder();
+        private final LongAdder parseAllocatedBytes = new LongAdder();
+        private final LongAdder numParsed = new LongAdder();
+
+        long getFilterNanos() {
+            return filterNanos.sum();
+        }
+
+        /**
+         * @return Bytes allocated while filtering, or negative if the JVM can't count them
+         */
+        long getFilterAllocatedBytes() {
+            return AllocationCounter.isSupported() ? filterAllocatedBytes.sum() : -1;
+        }
+
+        long getParseNanos() {
+            return parseNanos.sum();
+        }
+
+        /**
+         * @return Bytes allocated while parsing, or negative if the JVM can't count them
+         */
+        long getParseAllocatedBytes() {
+            return AllocationCounter.isSupported() ? parseAllocatedBytes.sum() : -1;
+        }
+
+        /**
+         * @return Number of filenames that were parsed, rather than reused from the known metadata
+         */
+        long getNumParsed() {
+            return numParsed.sum();
+        }
+    }
+
+    /**
+     * @param paths Paths in the journal directory to process
+     * @param entryFilter Filter deciding whether a path is a journal entry
+     * @param knownMetadata Already-parsed metadata which will be reused rather than re-parsed (must not be modified
+     *                      while the task runs)
+     * @param metadataFormatter Formatter to parse the metadata of filenames that aren't known
+     * @param stats Stats to add this task's filtering and parsing to
+     */
+    EntryScanTask(
+            List<Path> paths,
+            Predicate<Path> entryFilter,
+            Map<String, EntryMetadata> knownMetadata,
+            EntryMetadataFormatter metadataFormatter,
+            ScanStats stats) {
+        this.paths = paths;
+        this.entryFilter = entryFilter;
+        this.knownMetadata = knownMetadata;
+        this.metadataFormatter = metadataFormatter;
+        this.stats = stats;
+    }
+
+    @Override
+    protected Map<String, EntryMetadata> compute() {
+        if (this.paths.size() > SPLIT_THRESHOLD) {
+            int middle = this.paths.size() / 2;
+            EntryScanTask left = this.subtask(this.paths.subList(0, middle));
+            EntryScanTask right = this.subtask(this.paths.subList(middle, this.paths.size()));
+            left.fork();
+            Map<String, EntryMetadata> result = right.compute();
+            result.putAll(left.join());
+            return result;
+        }
+
+        // Filtering and parsing are done as separate passes so that each can be timed without reading the clock per path
+        long startAllocatedBytes = AllocationCounter.currentThreadAllocatedBytes();
+        long startNanos = System.nanoTime();
+        List<Path> entryPaths = new ArrayList<>(this.paths.size());
+        for (Path path : this.paths) {
+            if (this.entryFilter.test(path)) {
+                entryPaths.add(path);
+            }
+        }
+        long filteredAllocatedBytes = AllocationCounter.currentThreadAllocatedBytes();
+        long filteredNanos = System.nanoTime();
+
+        Map<String, EntryMetadata> result = new HashMap<>(entryPaths.size() * 4 / 3 + 1);
+        int numParsed = 0;
+        for (Path path : entryPaths) {
+            String filename = path.getFileName().toString();
+            EntryMetadata metadata = this.knownMetadata.get(filename);
+            if (metadata == null) {
+                metadata = this.metadataFormatter.parseMetadata(filename);
+                numParsed++;
+            }
+            result.put(filename, metadata);
+        }
+        long parsedAllocatedBytes = AllocationCounter.currentThreadAllocatedBytes();
+        long parsedNanos = System.nanoTime();
+
+        this.stats.filterNanos.add(filteredNanos - startNanos);
+        this.stats.filterAllocatedBytes.add(filteredAllocatedBytes - startAllocatedBytes);
+        this.stats.parseNanos.add(parsedNanos - filteredNanos);
+        this.stats.parseAllocatedBytes.add(parsedAllocatedBytes - filteredAllocatedBytes);
+        this.stats.numParsed.add(numParsed);
+        return result;
+    }
+
+    private EntryScanTask subtask(List<Path> subPaths) {
+        return new EntryScanTask(subPaths, this.entryFilter, this.knownMetadata, this.metadataFormatter, this.stats);
+    }
+}
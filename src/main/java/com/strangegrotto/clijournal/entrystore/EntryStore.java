@@ -1,57 +1,147 @@
 package com.strangegrotto.clijournal.entrystore;
 
-import com.google.common.collect.MultimapBuilder;
-import com.google.common.collect.SetMultimap;
-import com.google.common.collect.Sets;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Range;
+import com.google.common.collect.TreeMultimap;
+import com.strangegrotto.clijournal.metrics.MetricsRegistry;
+import com.strangegrotto.clijournal.metrics.PhaseProfile;
 
 import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.nio.file.*;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Class abstracting access to the actual filesystem containing the journal entries
  */
 public class EntryStore {
-    private static final String METADATA_SEPARATOR = "~";
-    private static final String TAG_SEPARATOR = ",";
-    private static final String PREFERRED_TIMESTAMP_FORMAT = "yyyy-MM-dd_HH-mm-ss";
-    private static final List<String> ACCEPTED_TIMESTAMP_FORMATS = Arrays.asList(
+    static final String METADATA_SEPARATOR = "~";
+    static final String TAG_SEPARATOR = ",";
+    static final String PREFERRED_TIMESTAMP_FORMAT = "yyyy-MM-dd_HH-mm-ss";
+    static final List<String> ACCEPTED_TIMESTAMP_FORMATS = Arrays.asList(
             "yyyy-MM-dd_HH-mm",
             PREFERRED_TIMESTAMP_FORMAT,
             "yyyy-MM-dd_HH:mm:ss"
     );
+    static final LocalDateTime MISSING_TIMESTAMP_SORT_VALUE = LocalDateTime.of(1970, 1, 1, 0, 0, 0);
+    private static final String METADATA_CACHE_FILENAME = "metadata.cache";
+    private static final String CONTENT_INDEX_DIRNAME = "content-index";
+    // Directory modification times this close to the present can't be trusted, because a change made within the
+    //  same timestamp granularity wouldn't change the mtime (the same "racy" problem that Git has with its index)
+    private static final long RACY_MODIFICATION_WINDOW_MILLIS = 2000;
+    // Number of directory entries handed off to the fork-join pool at a time while the directory is being listed
+    private static final int SCAN_BATCH_SIZE = 4096;
 
 
     private final Path journalDirpath;
-    private final Set<String> blacklistedFilenamePatterns;
+    private final EntryFilter entryFilter;
     private final EntryMetadataFormatter metadataFormatter;
+    private final Optional<EntryMetadataCache> metadataCache;
+    private final MetricsRegistry metrics;
     private final Map<String, EntryMetadata> filenamesAndMetadata; // We keep the metadata here only as a cache
-    private final SetMultimap<String, String> nameIndex;
-    private final SetMultimap<String, String> tagIndex;
+    // Every entry gets a dense integer ID (reused after deletion) so that indexes can be stored as bitmaps
+    private final Map<String, Integer> filenameIds;
+    private final List<String> idFilenames;  // Null at freed IDs
+    private final Deque<Integer> freeIds;
+    private final BitSet allIds;
+    // The name and time indexes double as the NAME and TIME ordered views, so they're kept sorted
+    private final TreeMultimap<String, String> nameIndex;
+    private final TrigramIndex nameTrigramIndex;  // Over the keys of nameIndex, for substring search
+    private final BkTree nameBkTree;  // Over the keys of nameIndex, for fuzzy search
+    private final Map<String, BitSet> tagIndex;
+    private final Map<String, BitSet> extensionIndex;
+    private final TreeMultimap<LocalDateTime, String> timeIndex;  // Only contains entries that have a timestamp
+    private final NavigableSet<String> untimestampedFilenames;
+    private final ContentIndex contentIndex;
+    // Entries whose bodies may have changed since the content index was last brought up to date
+    private final Set<String> staleContentFilenames;
+    // False when the content index needs checking against every entry (e.g. after a reindex)
+    private boolean contentIndexSynced;
+
+    // Modification time of the journal directory at the last reindex, or negative if unknown
+    private long indexedDirModifiedMillis;
+    private PhaseProfile lastReindexProfile;
+
+    // Present only when the store has been asked to watch the journal directory for changes
+    private Optional<WatchService> watchService;
+    // Set when filesystem events were lost and the next query needs to rescan the whole directory
+    private boolean rescanNeeded;
 
     /**
-     * Constructs an entry store using the given parameters.
+     * Constructs an entry store using the given parameters, without any persistent state
      * @param journalDirpath Directory where journal entries live
-     * @param blacklistedFilenamePatterns Regexes containing file names which will not be loaded into the store
      * @throws IOException if an error reading the entries from the filesystem occurs
      */
-    public EntryStore(Path journalDirpath, Set<String> blacklistedFilenamePatterns) throws IOException {
+    public EntryStore(Path journalDirpath) throws IOException {
+        this(journalDirpath, Optional.empty());
+    }
+
+    /**
+     * Constructs an entry store using the given parameters, with its own metrics registry
+     * @param journalDirpath Directory where journal entries live
+     * @param stateDirpath Directory, specific to this journal, where the store can persist data between runs
+     * @throws IOException if an error reading the entries from the filesystem occurs
+     */
+    public EntryStore(Path journalDirpath, Optional<Path> stateDirpath) throws IOException {
+        this(journalDirpath, stateDirpath, new MetricsRegistry());
+    }
+
+    /**
+     * Constructs an entry store using the given parameters. Files matching the rules in the journal's ignore file
+     * (see {@link EntryFilter}) won't be loaded into the store.
+     * @param journalDirpath Directory where journal entries live
+     * @param stateDirpath Directory, specific to this journal, where the store can persist data between runs (e.g.
+     *                     caches to speed up startup)
+     * @param metrics Registry to record the latency and result sizes of the store's queries in
+     * @throws IOException if an error reading the entries from the filesystem occurs
+     */
+    public EntryStore(
+            Path journalDirpath,
+            Optional<Path> stateDirpath,
+            MetricsRegistry metrics) throws IOException {
         this.journalDirpath = journalDirpath.toAbsolutePath();
-        this.blacklistedFilenamePatterns = blacklistedFilenamePatterns;
+        this.metrics = metrics;
+        this.entryFilter = EntryFilter.load(this.journalDirpath);
         this.metadataFormatter = new EntryMetadataFormatter(
                 METADATA_SEPARATOR,
                 TAG_SEPARATOR,
                 ACCEPTED_TIMESTAMP_FORMATS,
                 PREFERRED_TIMESTAMP_FORMAT
         );
+        this.metadataCache = stateDirpath.map(dirpath -> new EntryMetadataCache(
+                dirpath.resolve(METADATA_CACHE_FILENAME),
+                getCacheFingerprint(this.journalDirpath, this.entryFilter)
+        ));
 
         this.filenamesAndMetadata = new HashMap<>();
-        this.nameIndex = MultimapBuilder.hashKeys().hashSetValues().build();
-        this.tagIndex = MultimapBuilder.hashKeys().hashSetValues().build();
+        this.filenameIds = new HashMap<>();
+        this.idFilenames = new ArrayList<>();
+        this.freeIds = new ArrayDeque<>();
+        this.allIds = new BitSet();
+        this.nameIndex = TreeMultimap.create();
+        this.nameTrigramIndex = new TrigramIndex();
+        this.nameBkTree = new BkTree();
+        this.tagIndex = new HashMap<>();
+        this.extensionIndex = new HashMap<>();
+        this.timeIndex = TreeMultimap.create();
+        this.untimestampedFilenames = new TreeSet<>();
+        this.contentIndex = new ContentIndex(
+                this.journalDirpath,
+                stateDirpath.map(dirpath -> dirpath.resolve(CONTENT_INDEX_DIRNAME))
+        );
+        this.staleContentFilenames = new HashSet<>();
+        this.contentIndexSynced = false;
+        this.indexedDirModifiedMillis = -1;
+        this.lastReindexProfile = new PhaseProfile();
+        this.watchService = Optional.empty();
+        this.rescanNeeded = false;
 
         this.reindex();
     }
@@ -59,58 +149,348 @@ public class EntryStore {
     /**
      * Re-loads the state of the EntryStore by reading the state of the filesystem. Use this method when the
      * files on disk have changed via a method other than the CLI itself.
+     * Only filenames that weren't already known (either in memory or in the on-disk cache) get parsed, and the
+     * directory listing is skipped entirely if the journal directory hasn't been modified since it was last indexed.
      * @throws IOException if an error reading files occurs
      */
     public void reindex() throws IOException {
-        List<Path> entryPaths = Files.list(journalDirpath)
-                .filter(path -> isValidJournalEntry(path, this.blacklistedFilenamePatterns))
-                .collect(Collectors.toList());
+        MetricsRegistry.Sample sample = this.metrics.start("store.reindex");
+        PhaseProfile profile = new PhaseProfile();
+        this.lastReindexProfile = profile;
+        // Read the modification time *before* listing, so a change made during the listing is caught next time
+        long dirModifiedMillis = Files.getLastModifiedTime(journalDirpath).toMillis();
+        if (System.currentTimeMillis() - dirModifiedMillis < RACY_MODIFICATION_WINDOW_MILLIS) {
+            dirModifiedMillis = -1;
+        }
+        profile.mark("directory modification check");
+
+        Map<String, EntryMetadata> knownMetadata = this.filenamesAndMetadata;
+        long knownDirModifiedMillis = this.indexedDirModifiedMillis;
+        if (knownMetadata.isEmpty() && this.metadataCache.isPresent()) {
+            Optional<EntryMetadataCache.Snapshot> snapshotOpt = this.metadataCache.get().load();
+            if (snapshotOpt.isPresent()) {
+                knownMetadata = snapshotOpt.get().getFilenamesAndMetadata();
+                knownDirModifiedMillis = snapshotOpt.get().getDirModifiedMillis();
+            }
+            profile.mark("metadata cache load");
+        }
+
+        Map<String, EntryMetadata> newMetadata;
+        boolean changed;
+        if (dirModifiedMillis >= 0 && dirModifiedMillis == knownDirModifiedMillis) {
+            if (knownMetadata == this.filenamesAndMetadata) {
+                // Nothing has changed since we last indexed
+                sample.finish(this.filenamesAndMetadata.size());
+                return;
+            }
+            newMetadata = knownMetadata;
+            changed = false;
+        } else {
+            newMetadata = this.scanJournalDir(knownMetadata, profile);
+            changed = dirModifiedMillis != knownDirModifiedMillis || !newMetadata.keySet().equals(knownMetadata.keySet());
+        }
 
         this.filenamesAndMetadata.clear();
+        this.filenameIds.clear();
+        this.idFilenames.clear();
+        this.freeIds.clear();
+        this.allIds.clear();
         this.nameIndex.clear();
+        this.nameTrigramIndex.clear();
+        this.nameBkTree.clear();
         this.tagIndex.clear();
-        for (Path path : entryPaths) {
-            String filename = path.getFileName().toString();
-            EntryMetadata metadata = this.metadataFormatter.parseMetadata(filename);
-            this.filenamesAndMetadata.put(filename, metadata);
-            this.nameIndex.put(metadata.getNameSansExt(), filename);
-            for (String tag : metadata.getTags()) {
-                this.tagIndex.put(tag, filename);
+        this.extensionIndex.clear();
+        this.timeIndex.clear();
+        this.untimestampedFilenames.clear();
+        for (Map.Entry<String, EntryMetadata> entry : newMetadata.entrySet()) {
+            this.addToIndexes(entry.getKey(), entry.getValue());
+        }
+        this.indexedDirModifiedMillis = dirModifiedMillis;
+        // Entry bodies may have changed in ways that the listing can't tell us about
+        this.contentIndexSynced = false;
+        profile.mark("index building (" + newMetadata.size() + " entries)");
+
+        if (changed && this.metadataCache.isPresent()) {
+            try {
+                this.metadataCache.get().save(new EntryMetadataCache.Snapshot(dirModifiedMillis, newMetadata));
+            } catch (IOException e) {
+                // The cache is purely an optimization, so failing to write it shouldn't stop the user from journalling
             }
+            profile.mark("metadata cache save");
+        }
+        sample.finish(this.filenamesAndMetadata.size());
+    }
+
+    /**
+     * Starts watching the journal directory for changes made outside the CLI (e.g. syncing, other editors), so
+     * that they're applied to the store's indexes as deltas rather than needing a full {@link #reindex()}. The
+     * accumulated changes are applied at the start of every query.
+     * @throws IOException if the journal directory couldn't be registered with the filesystem's watch service
+     */
+    public void watchForChanges() throws IOException {
+        if (this.watchService.isPresent()) {
+            return;
+        }
+        WatchService newWatchService = this.journalDirpath.getFileSystem().newWatchService();
+        try {
+            this.journalDirpath.register(
+                    newWatchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_DELETE,
+                    StandardWatchEventKinds.ENTRY_MODIFY
+            );
+        } catch (IOException e) {
+            newWatchService.close();
+            throw e;
+        }
+        this.watchService = Optional.of(newWatchService);
+
+        // Anything that changed between the last index and the registration would otherwise be missed, but if the
+        //  directory's modification time hasn't moved (and was trustworthy when indexed) then nothing did
+        long dirModifiedMillis = Files.getLastModifiedTime(this.journalDirpath).toMillis();
+        if (this.indexedDirModifiedMillis < 0 || dirModifiedMillis != this.indexedDirModifiedMillis) {
+            this.rescanNeeded = true;
         }
     }
 
     public Set<Entry> getAllEntries() {
-        return this.filenamesAndMetadata.keySet().stream()
+        MetricsRegistry.Sample sample = this.metrics.start("store.getAllEntries");
+        this.applyFilesystemChanges();
+        Set<Entry> entries = this.filenamesAndMetadata.keySet().stream()
                 .map(this::buildEntry)
                 .collect(Collectors.toSet());
+        sample.finish(entries.size());
+        return entries;
+    }
+
+    /**
+     * Streams every entry in the given order, straight from the store's sorted indexes. The stream is lazy, so it
+     * must be consumed before the store is next used.
+     * @param order Order to stream the entries in
+     * @param descending Whether to stream the entries in reverse order
+     * @return Stream of all entries, in order (ties are broken by filename)
+     */
+    public Stream<Entry> streamAllEntries(EntryOrder order, boolean descending) {
+        this.applyFilesystemChanges();
+        Stream<String> filenames;
+        switch (order) {
+            case TIME:
+                // Entries without a timestamp slot in where their sort value would be
+                NavigableMap<LocalDateTime, Collection<String>> timestampedFilenames = this.timeIndex.asMap();
+                NavigableSet<String> untimestampedFilenames = descending
+                        ? this.untimestampedFilenames.descendingSet()
+                        : this.untimestampedFilenames;
+                List<Stream<String>> parts = Arrays.asList(
+                        streamIndexValues(
+                                this.timeIndex,
+                                timestampedFilenames.headMap(MISSING_TIMESTAMP_SORT_VALUE, false),
+                                descending
+                        ),
+                        untimestampedFilenames.stream(),
+                        streamIndexValues(
+                                this.timeIndex,
+                                timestampedFilenames.tailMap(MISSING_TIMESTAMP_SORT_VALUE, true),
+                                descending
+                        )
+                );
+                if (descending) {
+                    Collections.reverse(parts);
+                }
+                filenames = parts.stream().flatMap(Function.identity());
+                break;
+            case NAME:
+                filenames = streamIndexValues(this.nameIndex, this.nameIndex.asMap(), descending);
+                break;
+            default:
+                throw new IllegalArgumentException("Unhandled entry order '" + order + "'; this is a code error");
+        }
+        return filenames.map(this::buildEntry);
     }
 
     public Set<String> getAllTags() {
-        return this.tagIndex.keySet();
+        MetricsRegistry.Sample sample = this.metrics.start("store.getAllTags");
+        this.applyFilesystemChanges();
+        Set<String> tags = this.tagIndex.keySet();
+        sample.finish(tags.size());
+        return tags;
     }
 
     public List<Entry> getByIds(List<String> ids) {
-        return ids.stream()
+        MetricsRegistry.Sample sample = this.metrics.start("store.getByIds");
+        this.applyFilesystemChanges();
+        List<Entry> entries = ids.stream()
                 .filter(this.filenamesAndMetadata::containsKey)
                 .map(this::buildEntry)
                 .collect(Collectors.toList());
+        sample.finish(entries.size());
+        return entries;
     }
 
-    // TODO allow fuzzy search by name
     public Set<Entry> getByTag(String tag) {
-        return this.tagIndex.get(tag).stream()
-                .map(this::buildEntry)
-                .collect(Collectors.toSet());
+        MetricsRegistry.Sample sample = this.metrics.start("store.getByTag");
+        this.applyFilesystemChanges();
+        Set<Entry> entries = this.buildEntries(this.tagIndex.getOrDefault(tag, new BitSet()));
+        sample.finish(entries.size());
+        return entries;
+    }
+
+    /**
+     * @param query Boolean expression over tags
+     * @return Entries whose tags satisfy the query
+     */
+    public Set<Entry> getByTagQuery(TagQuery query) {
+        MetricsRegistry.Sample sample = this.metrics.start("store.getByTagQuery");
+        this.applyFilesystemChanges();
+        BitSet matchingIds = query.evaluate(
+                tag -> this.tagIndex.getOrDefault(tag, new BitSet()),
+                this.allIds
+        );
+        Set<Entry> entries = this.buildEntries(matchingIds);
+        sample.finish(entries.size());
+        return entries;
     }
 
     // TODO allow exact search by tag
     public Set<Entry> getByName(String keyword) {
-        return this.nameIndex.keySet().stream()
-                .filter(name -> name.contains(keyword))
+        MetricsRegistry.Sample sample = this.metrics.start("store.getByName");
+        this.applyFilesystemChanges();
+        Set<Entry> entries = this.nameTrigramIndex.findContaining(keyword).stream()
                 .flatMap(matchingName -> this.nameIndex.get(matchingName).stream())
                 .map(this::buildEntry)
                 .collect(Collectors.toSet());
+        sample.finish(entries.size());
+        return entries;
+    }
+
+    /**
+     * Typo-tolerant search for entries by name
+     * @param name Name to search for (without extension)
+     * @param maxDistance Maximum number of single-character edits between the name and an entry's name
+     * @return Entries whose names are within the edit distance of the name, closest first
+     */
+    public List<Entry> getByFuzzyName(String name, int maxDistance) {
+        MetricsRegistry.Sample sample = this.metrics.start("store.getByFuzzyName");
+        this.applyFilesystemChanges();
+        List<Entry> entries = this.nameBkTree.search(name, maxDistance).stream()
+                .flatMap(match -> this.nameIndex.get(match.getValue()).stream())
+                .map(this::buildEntry)
+                .collect(Collectors.toList());
+        sample.finish(entries.size());
+        return entries;
+    }
+
+    /**
+     * @param range Range of creation timestamps to get entries for
+     * @return Entries whose creation timestamp falls within the range, in timestamp order (entries without a
+     *  timestamp are never returned)
+     */
+    public List<Entry> getByTimeRange(Range<LocalDateTime> range) {
+        MetricsRegistry.Sample sample = this.metrics.start("store.getByTimeRange");
+        List<Entry> entries = this.streamByTimeRange(range, false).collect(Collectors.toList());
+        sample.finish(entries.size());
+        return entries;
+    }
+
+    /**
+     * Like {@link #getByTimeRange(Range)}, but lazy (so the stream must be consumed before the store is next used)
+     * @param range Range of creation timestamps to get entries for
+     * @param descending Whether to stream the entries in reverse timestamp order
+     * @return Stream of the entries whose creation timestamp falls within the range, in timestamp order
+     */
+    public Stream<Entry> streamByTimeRange(Range<LocalDateTime> range, boolean descending) {
+        this.applyFilesystemChanges();
+        return streamIndexValues(this.timeIndex, Maps.subMap(this.timeIndex.asMap(), range), descending)
+                .map(this::buildEntry);
+    }
+
+    /**
+     * Runs a query, starting from the predicate whose index is estimated to match the fewest entries and filtering
+     * its matches through the rest of the predicates from most to least selective, so that the expensive predicates
+     * (e.g. name substrings) only ever look at a few candidates
+     * @param query Query to run
+     * @return The plan that the query was run with, including the matching entries
+     */
+    public QueryPlan executeQuery(EntryQuery query) {
+        MetricsRegistry.Sample sample = this.metrics.start("store.executeQuery");
+        this.applyFilesystemChanges();
+        List<QueryPlan.Step> steps = new ArrayList<>();
+        List<QueryPredicate> predicates = query.getPredicates();
+        if (predicates.isEmpty()) {
+            BitSet candidateIds = (BitSet) this.allIds.clone();
+            long numEntries = candidateIds.cardinality();
+            steps.add(new QueryPlan.Step("all entries", QueryPlan.Access.FULL_SCAN, numEntries, numEntries));
+            sample.finish(numEntries);
+            return new QueryPlan(steps, this.buildEntries(candidateIds));
+        }
+
+        Map<QueryPredicate, Long> estimates = new HashMap<>();
+        for (QueryPredicate predicate : predicates) {
+            estimates.put(predicate, predicate.estimateCardinality(this));
+        }
+        List<QueryPredicate> orderedPredicates = new ArrayList<>(predicates);
+        orderedPredicates.sort(Comparator.comparingLong(estimates::get));
+
+        QueryPredicate drivingPredicate = orderedPredicates.get(0);
+        BitSet candidateIds = drivingPredicate.fetch(this);
+        double estimatedRows = estimates.get(drivingPredicate);
+        steps.add(new QueryPlan.Step(
+                drivingPredicate.toString(),
+                QueryPlan.Access.INDEX_LOOKUP,
+                Math.round(estimatedRows),
+                candidateIds.cardinality()
+        ));
+
+        long numEntries = Math.max(1, this.filenamesAndMetadata.size());
+        for (QueryPredicate predicate : orderedPredicates.subList(1, orderedPredicates.size())) {
+            predicate.filter(this, candidateIds);
+            // Assumes the predicates are independent, so each one keeps the same fraction of entries it would overall
+            estimatedRows *= (double) estimates.get(predicate) / numEntries;
+            steps.add(new QueryPlan.Step(
+                    predicate.toString(),
+                    QueryPlan.Access.FILTER,
+                    Math.round(estimatedRows),
+                    candidateIds.cardinality()
+            ));
+        }
+        QueryPlan plan = new QueryPlan(steps, this.buildEntries(candidateIds));
+        sample.finish(plan.getEntries().size());
+        return plan;
+    }
+
+    /**
+     * Searches the bodies of the journal's entries, bringing the content index up to date first (which, on the first
+     * call or after a reindex, means checking every entry)
+     * @param query Free text to search for
+     * @return Entries containing at least one of the query's terms, most relevant first
+     */
+    public List<Entry> getByContent(String query) {
+        MetricsRegistry.Sample sample = this.metrics.start("store.getByContent");
+        this.applyFilesystemChanges();
+        if (!this.contentIndexSynced) {
+            List<String> removedFilenames = this.contentIndex.getIndexedFilenames().stream()
+                    .filter(filename -> !this.filenamesAndMetadata.containsKey(filename))
+                    .collect(Collectors.toList());
+            removedFilenames.forEach(this.contentIndex::removeDocument);
+            this.contentIndex.indexDocuments(this.filenamesAndMetadata.keySet());
+            this.staleContentFilenames.clear();
+            // Without a watch service, we have no way of knowing about edits besides checking every entry again
+            this.contentIndexSynced = this.watchService.isPresent();
+        } else if (!this.staleContentFilenames.isEmpty()) {
+            for (String filename : this.staleContentFilenames) {
+                if (!this.filenamesAndMetadata.containsKey(filename)) {
+                    this.contentIndex.removeDocument(filename);
+                }
+            }
+            this.staleContentFilenames.removeIf(filename -> !this.filenamesAndMetadata.containsKey(filename));
+            this.contentIndex.indexDocuments(this.staleContentFilenames);
+            this.staleContentFilenames.clear();
+        }
+
+        List<Entry> entries = this.contentIndex.search(query).stream()
+                .map(this::buildEntry)
+                .collect(Collectors.toList());
+        sample.finish(entries.size());
+        return entries;
     }
 
     // TODO Not suuuuper happy with this method - feels like it should be higher-level somehow
@@ -127,6 +507,76 @@ public class EntryStore {
         return Paths.get(this.journalDirpath.toString(), filename);
     }
 
+    // Index accessors for QueryPredicate; the returned bitmaps are the indexes themselves, so mustn't be modified
+    BitSet getTagIds(String tag) {
+        return this.tagIndex.getOrDefault(tag, new BitSet());
+    }
+
+    BitSet getExtensionIds(String extension) {
+        return this.extensionIndex.getOrDefault(extension, new BitSet());
+    }
+
+    BitSet getNameIds(String keyword) {
+        BitSet ids = new BitSet();
+        for (String matchingName : this.nameTrigramIndex.findContaining(keyword)) {
+            for (String filename : this.nameIndex.get(matchingName)) {
+                ids.set(this.filenameIds.get(filename));
+            }
+        }
+        return ids;
+    }
+
+    long estimateNameMatches(String keyword) {
+        int numNames = this.nameIndex.keySet().size();
+        if (numNames == 0) {
+            return 0;
+        }
+        // Scale the number of candidate names up by the average number of entries sharing a name
+        return Math.round((double) this.nameTrigramIndex.estimateContaining(keyword)
+                * this.filenamesAndMetadata.size() / numNames);
+    }
+
+    BitSet getTimeRangeIds(Range<LocalDateTime> range) {
+        BitSet ids = new BitSet();
+        for (Collection<String> filenames : Maps.subMap(this.timeIndex.asMap(), range).values()) {
+            for (String filename : filenames) {
+                ids.set(this.filenameIds.get(filename));
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Estimates the number of entries in the range by assuming the entries are spread evenly between the earliest and
+     * latest timestamps, which avoids walking the range
+     */
+    long estimateTimeRangeMatches(Range<LocalDateTime> range) {
+        if (this.timeIndex.isEmpty()) {
+            return 0;
+        }
+        LocalDateTime earliest = this.timeIndex.keySet().first();
+        LocalDateTime latest = this.timeIndex.keySet().last();
+        Range<LocalDateTime> indexSpan = Range.closed(earliest, latest);
+        if (!range.isConnected(indexSpan)) {
+            return 0;
+        }
+        Range<LocalDateTime> overlap = range.intersection(indexSpan);
+        if (overlap.isEmpty()) {
+            return 0;
+        }
+        long spanSeconds = Duration.between(earliest, latest).getSeconds();
+        if (spanSeconds == 0) {
+            return this.timeIndex.size();
+        }
+        long overlapSeconds = Duration.between(overlap.lowerEndpoint(), overlap.upperEndpoint()).getSeconds();
+        // A non-empty overlap may still hold entries (e.g. a single instant), so it mustn't be estimated as empty
+        return Math.max(1, Math.round((double) this.timeIndex.size() * overlapSeconds / spanSeconds));
+    }
+
+    EntryMetadata getMetadataById(int id) {
+        return this.filenamesAndMetadata.get(this.idFilenames.get(id));
+    }
+
     // Technically we don't have to pass the metadata in - we could get it from the filename alone - but doing so
     //  is very slow
     private Entry buildEntry(String filename) {
@@ -139,14 +589,233 @@ public class EntryStore {
         );
     }
 
-    private static boolean isValidJournalEntry(Path path, Set<String> blacklistedFilenamePatterns) {
-        String filename = path.getFileName().toString();
-        for (String pattern : blacklistedFilenamePatterns) {
-            if (filename.matches(pattern)) {
-                return false;
+    /**
+     * Gets the time and allocation of each phase of the last {@link #reindex()} (including the one done on
+     * construction). Filtering and parsing run on the fork-join pool alongside the directory listing, so their
+     * figures are summed across its threads rather than being wall-clock time.
+     */
+    public PhaseProfile getLastReindexProfile() {
+        return lastReindexProfile;
+    }
+
+    /**
+     * Lists the journal directory, handing off batches of paths to the fork-join pool to be filtered, stat'd, and
+     * parsed while the listing continues, then merges the per-batch results
+     * @param knownMetadata Already-parsed metadata to reuse rather than re-parse
+     * @param profile Profile to mark the scan in, with its listing, filtering, parsing, and merging as sub-phases (the
+     *                filtering and parsing are summed across threads, so mustn't count towards the profile's total)
+     * @return Map of filename -> metadata for every entry in the journal
+     * @throws IOException if the directory couldn't be listed
+     */
+    private Map<String, EntryMetadata> scanJournalDir(
+            Map<String, EntryMetadata> knownMetadata,
+            PhaseProfile profile) throws IOException {
+        PhaseProfile scanProfile = new PhaseProfile();
+        Predicate<Path> entryFilter = this::isValidJournalEntry;
+        EntryScanTask.ScanStats scanStats = new EntryScanTask.ScanStats();
+        List<ForkJoinTask<Map<String, EntryMetadata>>> batchTasks = new ArrayList<>();
+        int numListed = 0;
+        try (DirectoryStream<Path> dirStream = Files.newDirectoryStream(this.journalDirpath)) {
+            List<Path> batch = new ArrayList<>(SCAN_BATCH_SIZE);
+            for (Path path : dirStream) {
+                batch.add(path);
+                numListed++;
+                if (batch.size() == SCAN_BATCH_SIZE) {
+                    batchTasks.add(ForkJoinPool.commonPool().submit(
+                            new EntryScanTask(batch, entryFilter, knownMetadata, this.metadataFormatter, scanStats)
+                    ));
+                    batch = new ArrayList<>(SCAN_BATCH_SIZE);
+                }
+            }
+            if (batch.size() > 0) {
+                batchTasks.add(ForkJoinPool.commonPool().submit(
+                        new EntryScanTask(batch, entryFilter, knownMetadata, this.metadataFormatter, scanStats)
+                ));
+            }
+        } catch (DirectoryIteratorException e) {
+            // Don't leave the already-submitted batches running against a listing we're abandoning
+            batchTasks.forEach(task -> task.cancel(true));
+            throw e.getCause();
+        }
+
+        scanProfile.mark("directory listing");
+        Map<String, EntryMetadata> result = new HashMap<>(batchTasks.size() * SCAN_BATCH_SIZE * 4 / 3 + 1);
+        for (ForkJoinTask<Map<String, EntryMetadata>> batchTask : batchTasks) {
+            result.putAll(batchTask.join());
+        }
+        scanProfile.mark("waiting for and merging scan batches");
+        scanProfile.add(
+                "filtering (summed across threads)",
+                scanStats.getFilterNanos(),
+                scanStats.getFilterAllocatedBytes()
+        );
+        scanProfile.add(
+                "parsing (" + scanStats.getNumParsed() + " parsed, summed across threads)",
+                scanStats.getParseNanos(),
+                scanStats.getParseAllocatedBytes()
+        );
+        profile.mark("directory scan (" + numListed + " files)");
+        profile.addSubphases(scanProfile);
+        return result;
+    }
+
+    /**
+     * Drains the events that the watch service has accumulated since the last query, applying each one as a delta
+     * to the indexes; lost events (overflow) fall back to rescanning the whole directory.
+     */
+    private void applyFilesystemChanges() {
+        if (!this.watchService.isPresent()) {
+            return;
+        }
+
+        WatchKey key;
+        while ((key = this.watchService.get().poll()) != null) {
+            for (WatchEvent<?> event : key.pollEvents()) {
+                WatchEvent.Kind<?> kind = event.kind();
+                if (kind == StandardWatchEventKinds.OVERFLOW) {
+                    this.rescanNeeded = true;
+                    continue;
+                }
+                if (this.rescanNeeded) {
+                    // No point applying deltas that the rescan will pick up anyway
+                    continue;
+                }
+
+                Path filepath = this.journalDirpath.resolve((Path) event.context());
+                String filename = filepath.getFileName().toString();
+                this.staleContentFilenames.add(filename);
+                if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
+                    if (!this.filenamesAndMetadata.containsKey(filename)
+                            && this.isValidJournalEntry(filepath)) {
+                        this.addToIndexes(filename, this.metadataFormatter.parseMetadata(filename));
+                    }
+                } else if (kind == StandardWatchEventKinds.ENTRY_DELETE) {
+                    this.removeFromIndexes(filename);
+                }
+            }
+
+            if (!key.reset()) {
+                // The journal directory itself has gone away, so there's nothing left to watch
+                try {
+                    this.watchService.get().close();
+                } catch (IOException e) {
+                    // Nothing useful we can do; we're discarding the watch service anyway
+                }
+                this.watchService = Optional.empty();
+                break;
+            }
+        }
+
+        if (this.rescanNeeded) {
+            // Force a listing, since the directory's modification time may not tell us about everything we missed
+            this.indexedDirModifiedMillis = -1;
+            try {
+                this.reindex();
+                this.rescanNeeded = false;
+            } catch (IOException e) {
+                // Keep serving the (slightly stale) index we have, and try the rescan again on the next query
+            }
+        }
+    }
+
+    private void addToIndexes(String filename, EntryMetadata metadata) {
+        this.filenamesAndMetadata.put(filename, metadata);
+        int id;
+        if (this.freeIds.isEmpty()) {
+            id = this.idFilenames.size();
+            this.idFilenames.add(filename);
+        } else {
+            id = this.freeIds.pop();
+            this.idFilenames.set(id, filename);
+        }
+        this.filenameIds.put(filename, id);
+        this.allIds.set(id);
+
+        this.nameIndex.put(metadata.getNameSansExt(), filename);
+        this.nameTrigramIndex.add(metadata.getNameSansExt());
+        this.nameBkTree.add(metadata.getNameSansExt());
+        for (String tag : metadata.getTags()) {
+            this.tagIndex.computeIfAbsent(tag, newTag -> new BitSet()).set(id);
+        }
+        this.extensionIndex.computeIfAbsent(metadata.getExtension(), newExtension -> new BitSet()).set(id);
+        if (metadata.getCreationTimestamp().isPresent()) {
+            this.timeIndex.put(metadata.getCreationTimestamp().get(), filename);
+        } else {
+            this.untimestampedFilenames.add(filename);
+        }
+    }
+
+    private void removeFromIndexes(String filename) {
+        EntryMetadata metadata = this.filenamesAndMetadata.remove(filename);
+        if (metadata == null) {
+            return;
+        }
+        this.nameIndex.remove(metadata.getNameSansExt(), filename);
+        if (!this.nameIndex.containsKey(metadata.getNameSansExt())) {
+            this.nameTrigramIndex.remove(metadata.getNameSansExt());
+            this.nameBkTree.remove(metadata.getNameSansExt());
+        }
+        int id = this.filenameIds.remove(filename);
+        this.idFilenames.set(id, null);
+        this.freeIds.push(id);
+        this.allIds.clear(id);
+
+        for (String tag : metadata.getTags()) {
+            BitSet taggedIds = this.tagIndex.get(tag);
+            taggedIds.clear(id);
+            if (taggedIds.isEmpty()) {
+                this.tagIndex.remove(tag);
             }
         }
-        return Files.isRegularFile(path);
+        BitSet extensionIds = this.extensionIndex.get(metadata.getExtension());
+        extensionIds.clear(id);
+        if (extensionIds.isEmpty()) {
+            this.extensionIndex.remove(metadata.getExtension());
+        }
+        if (metadata.getCreationTimestamp().isPresent()) {
+            this.timeIndex.remove(metadata.getCreationTimestamp().get(), filename);
+        } else {
+            this.untimestampedFilenames.remove(filename);
+        }
+    }
+
+    private static String getCacheFingerprint(Path journalDirpath, EntryFilter entryFilter) {
+        return String.join(
+                "\n",
+                journalDirpath.toString(),
+                String.join("\n", entryFilter.getRuleLines()),
+                METADATA_SEPARATOR,
+                TAG_SEPARATOR,
+                String.join("\n", ACCEPTED_TIMESTAMP_FORMATS),
+                PREFERRED_TIMESTAMP_FORMAT
+        );
+    }
+
+    /**
+     * @param index Sorted index
+     * @param keyRange View of the index's keys and values (e.g. a sub-map) to stream the values of
+     * @param descending Whether to stream the values in reverse order
+     * @return Stream of the values, in key then value order
+     */
+    private static <K> Stream<String> streamIndexValues(
+            TreeMultimap<K, String> index,
+            NavigableMap<K, Collection<String>> keyRange,
+            boolean descending) {
+        if (descending) {
+            return keyRange.descendingKeySet().stream()
+                    .flatMap(key -> index.get(key).descendingSet().stream());
+        }
+        return keyRange.values().stream().flatMap(Collection::stream);
+    }
+
+    private Set<Entry> buildEntries(BitSet ids) {
+        return ids.stream()
+                .mapToObj(this.idFilenames::get)
+                .map(this::buildEntry)
+                .collect(Collectors.toSet());
+    }
 
+    private boolean isValidJournalEntry(Path path) {
+        return !this.entryFilter.isIgnored(path.getFileName().toString()) && Files.isRegularFile(path);
     }
 }
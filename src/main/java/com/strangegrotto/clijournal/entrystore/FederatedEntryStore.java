@@ -0,0 +1,412 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Range;
+import com.google.common.collect.Streams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.strangegrotto.clijournal.metrics.MetricsRegistry;
+import com.strangegrotto.clijournal.metrics.PhaseProfile;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Presents several journals (e.g. work vs personal), each indexed by its own {@link EntryStore}, as a single store.
+ * Queries are run against every journal at once and their results merged; ordered views are k-way merged lazily, so
+ * listing the first N entries only ever pulls about N from each journal. Each store is only ever used by one thread
+ * at a time, so the stores themselves needn't be thread-safe.
+ *
+ * With more than one journal, entry IDs are qualified with the name of the journal the entry is in (e.g.
+ * "work/standup~2020-03-01_10-00-00~meetings.md"), so references to entries with the same filename in different
+ * journals stay unambiguous. With a single journal, every call goes straight through to its store.
+ */
+public class FederatedEntryStore {
+    private final Map<String, EntryStore> journalStores;
+    private final String defaultJournalName;
+    private final boolean qualifyIds;
+
+    /**
+     * Constructs a federated store over a single journal, whose entry IDs are left unqualified
+     * @param entryStore Store of the journal
+     */
+    public FederatedEntryStore(EntryStore entryStore) {
+        this(Collections.singletonMap("", entryStore));
+    }
+
+    /**
+     * @param journalStores Name of each journal -> its store, in the order the journals should be listed in; the first
+     *                      journal is the one new entries go in by default
+     */
+    public FederatedEntryStore(Map<String, EntryStore> journalStores) {
+        Preconditions.checkArgument(!journalStores.isEmpty(), "At least one journal is required");
+        for (String journalName : journalStores.keySet()) {
+            Preconditions.checkArgument(
+                    !journalName.contains(Entry.JOURNAL_ID_SEPARATOR),
+                    "Journal names can't contain '%s', but got '%s'",
+                    Entry.JOURNAL_ID_SEPARATOR,
+                    journalName
+            );
+        }
+        this.journalStores = new LinkedHashMap<>(journalStores);
+        this.defaultJournalName = journalStores.keySet().iterator().next();
+        this.qualifyIds = journalStores.size() > 1;
+    }
+
+    /**
+     * Constructs a store for each journal, in parallel, so that startup takes about as long as indexing the largest
+     * journal rather than all of them
+     * @param journalDirpaths Name of each journal -> the directory where its entries live, in the order the journals
+     *                        should be listed in
+     * @param stateDirpathGetter Gets the directory where a journal's store can persist data between runs (see
+     *                           {@link EntryStore#EntryStore(Path, Optional, MetricsRegistry)}) from the journal's
+     *                           directory
+     * @param metrics Registry to record the latency and result sizes of the stores' queries in
+     * @throws IOException if an error reading any journal's entries from the filesystem occurs
+     */
+    public static FederatedEntryStore open(
+            Map<String, Path> journalDirpaths,
+            Function<Path, Optional<Path>> stateDirpathGetter,
+            MetricsRegistry metrics) throws IOException {
+        Preconditions.checkArgument(!journalDirpaths.isEmpty(), "At least one journal is required");
+        if (journalDirpaths.size() == 1) {
+            Path journalDirpath = journalDirpaths.values().iterator().next();
+            return new FederatedEntryStore(new EntryStore(
+                    journalDirpath,
+                    stateDirpathGetter.apply(journalDirpath),
+                    metrics
+            ));
+        }
+
+        // Each store lists its directory on its own thread and hands off the parsing to the fork-join pool, so the
+        //  listings (which mostly wait on the filesystem) overlap without starving the parsing of threads
+        ExecutorService executor = Executors.newFixedThreadPool(
+                journalDirpaths.size(),
+                new ThreadFactoryBuilder().setNameFormat("journal-loader-%d").setDaemon(true).build()
+        );
+        try {
+            Map<String, Future<EntryStore>> storeFutures = new LinkedHashMap<>();
+            for (Map.Entry<String, Path> journal : journalDirpaths.entrySet()) {
+                Path journalDirpath = journal.getValue();
+                storeFutures.put(journal.getKey(), executor.submit(() -> new EntryStore(
+                        journalDirpath,
+                        stateDirpathGetter.apply(journalDirpath),
+                        metrics
+                )));
+            }
+
+            Map<String, EntryStore> journalStores = new LinkedHashMap<>();
+            for (Map.Entry<String, Future<EntryStore>> storeFuture : storeFutures.entrySet()) {
+                String journalName = storeFuture.getKey();
+                try {
+                    journalStores.put(journalName, storeFuture.getValue().get());
+                } catch (ExecutionException e) {
+                    Throwables.throwIfInstanceOf(e.getCause(), RuntimeException.class);
+                    throw new IOException(
+                            "Error loading journal '" + journalName + "': " + e.getCause().getMessage(),
+                            e.getCause()
+                    );
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while loading journal '" + journalName + "'");
+                }
+            }
+            return new FederatedEntryStore(journalStores);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Has every journal's store watch its directory for changes (see {@link EntryStore#watchForChanges()})
+     * @throws IOException if any of the directories couldn't be watched; the others will still be watched
+     */
+    public void watchForChanges() throws IOException {
+        IOException firstError = null;
+        for (Map.Entry<String, EntryStore> journal : this.journalStores.entrySet()) {
+            try {
+                journal.getValue().watchForChanges();
+            } catch (IOException e) {
+                if (firstError == null) {
+                    firstError = this.qualifyIds
+                            ? new IOException("journal '" + journal.getKey() + "': " + e.getMessage(), e)
+                            : e;
+                }
+            }
+        }
+        if (firstError != null) {
+            throw firstError;
+        }
+    }
+
+    public Set<Entry> getAllEntries() {
+        if (!this.qualifyIds) {
+            return this.getDefaultStore().getAllEntries();
+        }
+        return this.queryEveryJournal(EntryStore::getAllEntries).stream()
+                .flatMap(Collection::stream)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Streams every entry in the given order, merging each journal's ordered view. The stream is lazy, so it must be
+     * consumed before the store is next used.
+     * @param order Order to stream the entries in
+     * @param descending Whether to stream the entries in reverse order
+     * @return Stream of all entries, in order
+     */
+    public Stream<Entry> streamAllEntries(EntryOrder order, boolean descending) {
+        return this.mergeOrderedViews(store -> store.streamAllEntries(order, descending), order, descending);
+    }
+
+    public Set<String> getAllTags() {
+        if (!this.qualifyIds) {
+            return this.getDefaultStore().getAllTags();
+        }
+        Set<String> tags = new HashSet<>();
+        for (EntryStore store : this.journalStores.values()) {
+            tags.addAll(store.getAllTags());
+        }
+        return tags;
+    }
+
+    /**
+     * @param ids IDs of entries to get; unqualified IDs are looked up in every journal
+     * @return Entries with the given IDs, in the same order (IDs of entries that no longer exist are skipped)
+     */
+    public List<Entry> getByIds(List<String> ids) {
+        if (!this.qualifyIds) {
+            return this.getDefaultStore().getByIds(ids);
+        }
+        List<Entry> entries = new ArrayList<>();
+        for (String id : ids) {
+            int separatorIndex = id.indexOf(Entry.JOURNAL_ID_SEPARATOR);
+            if (separatorIndex < 0) {
+                for (Map.Entry<String, EntryStore> journal : this.journalStores.entrySet()) {
+                    entries.addAll(qualify(journal.getKey(), journal.getValue().getByIds(List.of(id))));
+                }
+                continue;
+            }
+            String journalName = id.substring(0, separatorIndex);
+            EntryStore store = this.journalStores.get(journalName);
+            if (store != null) {
+                List<String> filename = List.of(id.substring(separatorIndex + 1));
+                entries.addAll(qualify(journalName, store.getByIds(filename)));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param query Boolean expression over tags
+     * @return Entries, from every journal, whose tags satisfy the query
+     */
+    public Set<Entry> getByTagQuery(TagQuery query) {
+        if (!this.qualifyIds) {
+            return this.getDefaultStore().getByTagQuery(query);
+        }
+        return this.queryEveryJournal(store -> store.getByTagQuery(query)).stream()
+                .flatMap(Collection::stream)
+                .collect(Collectors.toSet());
+    }
+
+    public Set<Entry> getByName(String keyword) {
+        if (!this.qualifyIds) {
+            return this.getDefaultStore().getByName(keyword);
+        }
+        return this.queryEveryJournal(store -> store.getByName(keyword)).stream()
+                .flatMap(Collection::stream)
+                .collect(Collectors.toSet());
+    }
+
+    /**
+     * Typo-tolerant search for entries by name
+     * @param name Name to search for (without extension)
+     * @param maxDistance Maximum number of single-character edits between the name and an entry's name
+     * @return Entries, from every journal, whose names are within the edit distance of the name, closest first
+     */
+    public List<Entry> getByFuzzyName(String name, int maxDistance) {
+        if (!this.qualifyIds) {
+            return this.getDefaultStore().getByFuzzyName(name, maxDistance);
+        }
+        List<List<Entry>> journalResults = this.queryEveryJournal(store -> store.getByFuzzyName(name, maxDistance));
+        Comparator<Entry> byDistance = Comparator.comparingInt(
+                entry -> BkTree.levenshteinDistance(name, entry.getMetadata().getNameSansExt())
+        );
+        List<Iterator<Entry>> resultIterators = journalResults.stream()
+                .map(List::iterator)
+                .collect(Collectors.toList());
+        List<Entry> entries = new ArrayList<>();
+        Iterators.addAll(entries, Iterators.mergeSorted(resultIterators, byDistance));
+        return entries;
+    }
+
+    /**
+     * @param range Range of creation timestamps to get entries for
+     * @return Entries, from every journal, whose creation timestamp falls within the range, in timestamp order
+     */
+    public List<Entry> getByTimeRange(Range<LocalDateTime> range) {
+        return this.streamByTimeRange(range, false).collect(Collectors.toList());
+    }
+
+    /**
+     * Like {@link #getByTimeRange(Range)}, but lazy (so the stream must be consumed before the store is next used)
+     * @param range Range of creation timestamps to get entries for
+     * @param descending Whether to stream the entries in reverse timestamp order
+     * @return Stream of the entries whose creation timestamp falls within the range, in timestamp order
+     */
+    public Stream<Entry> streamByTimeRange(Range<LocalDateTime> range, boolean descending) {
+        return this.mergeOrderedViews(store -> store.streamByTimeRange(range, descending), EntryOrder.TIME, descending);
+    }
+
+    /**
+     * Runs a query against every journal, each journal planning it separately (since the selectivity of its
+     * predicates differs from journal to journal)
+     * @param query Query to run
+     * @return The plan that the query was run with, whose steps are those of each journal's plan in turn, labelled
+     *  with the journal's name, and whose entries are the matches from every journal
+     */
+    public QueryPlan executeQuery(EntryQuery query) {
+        if (!this.qualifyIds) {
+            return this.getDefaultStore().executeQuery(query);
+        }
+        List<QueryPlan> journalPlans = this.journalStores.values().parallelStream()
+                .map(store -> store.executeQuery(query))
+                .collect(Collectors.toList());
+        List<QueryPlan.Step> steps = new ArrayList<>();
+        Set<Entry> entries = new HashSet<>();
+        Iterator<String> journalNames = this.journalStores.keySet().iterator();
+        for (QueryPlan journalPlan : journalPlans) {
+            String journalName = journalNames.next();
+            for (QueryPlan.Step step : journalPlan.getSteps()) {
+                steps.add(new QueryPlan.Step(
+                        journalName + ": " + step.getDescription(),
+                        step.getAccess(),
+                        step.getEstimatedRows(),
+                        step.getActualRows()
+                ));
+            }
+            entries.addAll(qualify(journalName, journalPlan.getEntries()));
+        }
+        return new QueryPlan(steps, entries);
+    }
+
+    /**
+     * Searches the bodies of every journal's entries
+     * @param query Free text to search for
+     * @return Entries containing at least one of the query's terms, most relevant first; since each journal's
+     *  relevance scores are relative to that journal alone, the journals' results are interleaved rank by rank
+     */
+    public List<Entry> getByContent(String query) {
+        if (!this.qualifyIds) {
+            return this.getDefaultStore().getByContent(query);
+        }
+        List<List<Entry>> journalResults = this.queryEveryJournal(store -> store.getByContent(query));
+        List<Entry> entries = new ArrayList<>();
+        int numRanks = journalResults.stream().mapToInt(List::size).max().orElse(0);
+        for (int rank = 0; rank < numRanks; rank++) {
+            for (List<Entry> results : journalResults) {
+                if (rank < results.size()) {
+                    entries.add(results.get(rank));
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @param name Name of the entry in form 'name.ext', optionally prefixed with the name of the journal to put it in
+     *             and {@link Entry#JOURNAL_ID_SEPARATOR} (otherwise it goes in the first journal)
+     * @throws IllegalArgumentException if the name is prefixed with a journal that doesn't exist
+     */
+    public Path getNewEntryFilepath(String name, LocalDateTime creationTimestamp, Set<String> tags) {
+        String journalName = this.defaultJournalName;
+        String entryName = name;
+        int separatorIndex = name.indexOf(Entry.JOURNAL_ID_SEPARATOR);
+        if (this.qualifyIds && separatorIndex >= 0) {
+            journalName = name.substring(0, separatorIndex);
+            entryName = name.substring(separatorIndex + 1);
+            if (!this.journalStores.containsKey(journalName)) {
+                throw new IllegalArgumentException("No journal named '" + journalName + "'; journals are: "
+                        + String.join(", ", this.journalStores.keySet()));
+            }
+        }
+        return this.journalStores.get(journalName).getNewEntryFilepath(entryName, creationTimestamp, tags);
+    }
+
+    /**
+     * Gets the time and allocation of each phase of the journals' last reindexes. With several journals, there's a
+     * phase per journal containing its reindex's phases; the journals are indexed in parallel, so these add up to
+     * more than the wall-clock time.
+     */
+    public PhaseProfile getLastReindexProfile() {
+        if (!this.qualifyIds) {
+            return this.getDefaultStore().getLastReindexProfile();
+        }
+        PhaseProfile profile = new PhaseProfile();
+        for (Map.Entry<String, EntryStore> journal : this.journalStores.entrySet()) {
+            PhaseProfile journalProfile = journal.getValue().getLastReindexProfile();
+            profile.add(
+                    "journal '" + journal.getKey() + "'",
+                    journalProfile.getTotalNanos(),
+                    journalProfile.getTotalAllocatedBytes()
+            );
+            profile.addSubphases(journalProfile);
+        }
+        return profile;
+    }
+
+    private EntryStore getDefaultStore() {
+        return this.journalStores.get(this.defaultJournalName);
+    }
+
+    /**
+     * Runs a query against every journal at once, on the fork-join pool
+     * @return Each journal's results, in journal order, with their entries' IDs qualified
+     */
+    private List<List<Entry>> queryEveryJournal(Function<EntryStore, Collection<Entry>> query) {
+        return this.journalStores.entrySet().parallelStream()
+                .map(journal -> qualify(journal.getKey(), query.apply(journal.getValue())))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * K-way merges each journal's ordered view, pulling from a journal's view only once its next entry is the next
+     * in order overall
+     */
+    private Stream<Entry> mergeOrderedViews(
+            Function<EntryStore, Stream<Entry>> orderedView,
+            EntryOrder order,
+            boolean descending) {
+        if (!this.qualifyIds) {
+            return orderedView.apply(this.getDefaultStore());
+        }
+        // Each view is lazy, so is only walked as far as the merged stream is consumed
+        List<Iterator<Entry>> viewIterators = new ArrayList<>();
+        for (Map.Entry<String, EntryStore> journal : this.journalStores.entrySet()) {
+            String journalName = journal.getKey();
+            viewIterators.add(orderedView.apply(journal.getValue())
+                    .map(entry -> entry.withJournalName(journalName))
+                    .iterator());
+        }
+        Comparator<Entry> comparator = descending ? order.getComparator().reversed() : order.getComparator();
+        return Streams.stream(Iterators.mergeSorted(viewIterators, comparator));
+    }
+
+    private static List<Entry> qualify(String journalName, Collection<Entry> entries) {
+        return entries.stream()
+                .map(entry -> entry.withJournalName(journalName))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,81 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Record of how an {@link EntryQuery} was executed: the order its predicates were applied in, how many entries the
+ * planner expected each step to leave, and how many it actually did
+ */
+public class QueryPlan {
+    /**
+     * How a step got its entries
+     */
+    public enum Access {
+        // The step's entries were looked up in an index
+        INDEX_LOOKUP,
+        // Every entry in the journal was taken, because the query had no predicates
+        FULL_SCAN,
+        // The step narrowed down the previous step's entries
+        FILTER
+    }
+
+    /**
+     * A single step of the plan
+     */
+    public static class Step {
+        private final String description;
+        private final Access access;
+        private final long estimatedRows;
+        private final long actualRows;
+
+        Step(String description, Access access, long estimatedRows, long actualRows) {
+            this.description = description;
+            this.access = access;
+            this.estimatedRows = estimatedRows;
+            this.actualRows = actualRows;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        public Access getAccess() {
+            return access;
+        }
+
+        /**
+         * @return Number of entries the planner expected to be left after this step
+         */
+        public long getEstimatedRows() {
+            return estimatedRows;
+        }
+
+        /**
+         * @return Number of entries actually left after this step
+         */
+        public long getActualRows() {
+            return actualRows;
+        }
+    }
+
+    private final List<Step> steps;
+    private final Set<Entry> entries;
+
+    QueryPlan(List<Step> steps, Set<Entry> entries) {
+        this.steps = steps;
+        this.entries = entries;
+    }
+
+    public List<Step> getSteps() {
+        return Collections.unmodifiableList(this.steps);
+    }
+
+    /**
+     * @return Entries matching the query
+     */
+    public Set<Entry> getEntries() {
+        return this.entries;
+    }
+}
@@ -0,0 +1,191 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import com.google.common.collect.Range;
+
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.function.Predicate;
+
+/**
+ * A single condition in an {@link EntryQuery}. Every predicate can both fetch its matching entries from one of the
+ * {@link EntryStore}'s indexes and filter an existing set of candidates, so the planner can start from whichever
+ * predicate is most selective.
+ */
+public abstract class QueryPredicate {
+    private QueryPredicate() {}
+
+    /**
+     * @param tag Tag that entries must have
+     */
+    public static QueryPredicate tag(String tag) {
+        return new TagPredicate(tag);
+    }
+
+    /**
+     * @param substring Substring that entries' names (without extension) must contain
+     */
+    public static QueryPredicate nameContaining(String substring) {
+        return new NamePredicate(substring);
+    }
+
+    /**
+     * @param range Range that entries' creation timestamps must fall in (entries without one never match)
+     * @param description How the user wrote the range, for explaining the query
+     */
+    public static QueryPredicate createdIn(Range<LocalDateTime> range, String description) {
+        return new TimePredicate(range, description);
+    }
+
+    /**
+     * @param extension Extension that entries must have (without the dot)
+     */
+    public static QueryPredicate extension(String extension) {
+        return new ExtensionPredicate(extension);
+    }
+
+    /**
+     * @return Estimate of how many entries match this predicate, from the sizes of the store's indexes
+     */
+    abstract long estimateCardinality(EntryStore entryStore);
+
+    /**
+     * @return IDs of the entries matching this predicate, looked up in one of the store's indexes
+     */
+    abstract BitSet fetch(EntryStore entryStore);
+
+    /**
+     * Removes the IDs of entries not matching this predicate
+     * @param candidateIds IDs to filter, which will be modified
+     */
+    abstract void filter(EntryStore entryStore, BitSet candidateIds);
+
+    private static class TagPredicate extends QueryPredicate {
+        private final String tag;
+
+        private TagPredicate(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        long estimateCardinality(EntryStore entryStore) {
+            // Exact, since the posting list's size is known
+            return entryStore.getTagIds(this.tag).cardinality();
+        }
+
+        @Override
+        BitSet fetch(EntryStore entryStore) {
+            return (BitSet) entryStore.getTagIds(this.tag).clone();
+        }
+
+        @Override
+        void filter(EntryStore entryStore, BitSet candidateIds) {
+            candidateIds.and(entryStore.getTagIds(this.tag));
+        }
+
+        @Override
+        public String toString() {
+            return "tag:" + this.tag;
+        }
+    }
+
+    private static class ExtensionPredicate extends QueryPredicate {
+        private final String extension;
+
+        private ExtensionPredicate(String extension) {
+            this.extension = extension;
+        }
+
+        @Override
+        long estimateCardinality(EntryStore entryStore) {
+            return entryStore.getExtensionIds(this.extension).cardinality();
+        }
+
+        @Override
+        BitSet fetch(EntryStore entryStore) {
+            return (BitSet) entryStore.getExtensionIds(this.extension).clone();
+        }
+
+        @Override
+        void filter(EntryStore entryStore, BitSet candidateIds) {
+            candidateIds.and(entryStore.getExtensionIds(this.extension));
+        }
+
+        @Override
+        public String toString() {
+            return "ext:" + this.extension;
+        }
+    }
+
+    private static class NamePredicate extends QueryPredicate {
+        private final String substring;
+
+        private NamePredicate(String substring) {
+            this.substring = substring;
+        }
+
+        @Override
+        long estimateCardinality(EntryStore entryStore) {
+            return entryStore.estimateNameMatches(this.substring);
+        }
+
+        @Override
+        BitSet fetch(EntryStore entryStore) {
+            return entryStore.getNameIds(this.substring);
+        }
+
+        @Override
+        void filter(EntryStore entryStore, BitSet candidateIds) {
+            removeNonMatching(entryStore, candidateIds, metadata -> metadata.getNameSansExt().contains(this.substring));
+        }
+
+        @Override
+        public String toString() {
+            return "name:" + this.substring;
+        }
+    }
+
+    private static class TimePredicate extends QueryPredicate {
+        private final Range<LocalDateTime> range;
+        private final String description;
+
+        private TimePredicate(Range<LocalDateTime> range, String description) {
+            this.range = range;
+            this.description = description;
+        }
+
+        @Override
+        long estimateCardinality(EntryStore entryStore) {
+            return entryStore.estimateTimeRangeMatches(this.range);
+        }
+
+        @Override
+        BitSet fetch(EntryStore entryStore) {
+            return entryStore.getTimeRangeIds(this.range);
+        }
+
+        @Override
+        void filter(EntryStore entryStore, BitSet candidateIds) {
+            removeNonMatching(
+                    entryStore,
+                    candidateIds,
+                    metadata -> metadata.getCreationTimestamp().map(this.range::contains).orElse(false)
+            );
+        }
+
+        @Override
+        public String toString() {
+            return this.description;
+        }
+    }
+
+    private static void removeNonMatching(
+            EntryStore entryStore,
+            BitSet candidateIds,
+            Predicate<EntryMetadata> matches) {
+        for (int id = candidateIds.nextSetBit(0); id >= 0; id = candidateIds.nextSetBit(id + 1)) {
+            if (!matches.test(entryStore.getMetadataById(id))) {
+                candidateIds.clear(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import java.util.*;
+import java.util.function.Function;
+
+/**
+ * Boolean expression over tags (e.g. "work &amp; !draft | meeting"), evaluated against the {@link EntryStore}'s tag
+ * bitmaps. '!' binds tightest, then '&amp;', then '|', and parentheses can be used for grouping. Terms next to each
+ * other with no operator between them are and-ed (so "work draft" means "work &amp; draft"). A '\' makes the
+ * character after it part of the tag, so tags containing operators or whitespace can still be searched for.
+ */
+public abstract class TagQuery {
+    private static final String OPERATOR_CHARS = "&|!()";
+    private static final char ESCAPE_CHAR = '\\';
+
+    private TagQuery() {}
+
+    /**
+     * @param expression Tag expression to parse
+     * @return The parsed query
+     * @throws IllegalArgumentException if the expression isn't valid
+     */
+    public static TagQuery parse(String expression) {
+        Parser parser = new Parser(tokenize(expression));
+        TagQuery query = parser.parseOr();
+        if (parser.hasNext()) {
+            throw new IllegalArgumentException(
+                    "Unexpected '" + parser.peek() + "' in tag expression '" + expression + "'"
+            );
+        }
+        return query;
+    }
+
+    /**
+     * @param tag Tag to match literally
+     * @return The tag with its operator, whitespace, and escape characters escaped, for use in an expression
+     */
+    public static String escapeTag(String tag) {
+        StringBuilder escaped = new StringBuilder(tag.length());
+        for (int i = 0; i < tag.length(); i++) {
+            char c = tag.charAt(i);
+            if (OPERATOR_CHARS.indexOf(c) >= 0 || Character.isWhitespace(c) || c == ESCAPE_CHAR) {
+                escaped.append(ESCAPE_CHAR);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * @return Every tag referenced by the query
+     */
+    public abstract Set<String> getTags();
+
+    /**
+     * Evaluates the query without modifying any of the bitmaps it's given
+     * @param tagBitmaps Looks up the bitmap of entry IDs having a tag (empty if no entries have it)
+     * @param allIds Bitmap of all entry IDs, for negation
+     * @return New bitmap of the IDs of the entries matching the query
+     */
+    abstract BitSet evaluate(Function<String, BitSet> tagBitmaps, BitSet allIds);
+
+    private static class Tag extends TagQuery {
+        private final String tag;
+
+        private Tag(String tag) {
+            this.tag = tag;
+        }
+
+        @Override
+        public Set<String> getTags() {
+            return Collections.singleton(this.tag);
+        }
+
+        @Override
+        BitSet evaluate(Function<String, BitSet> tagBitmaps, BitSet allIds) {
+            return (BitSet) tagBitmaps.apply(this.tag).clone();
+        }
+
+        @Override
+        public String toString() {
+            return escapeTag(this.tag);
+        }
+    }
+
+    private static class Not extends TagQuery {
+        private final TagQuery operand;
+
+        private Not(TagQuery operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public Set<String> getTags() {
+            return this.operand.getTags();
+        }
+
+        @Override
+        BitSet evaluate(Function<String, BitSet> tagBitmaps, BitSet allIds) {
+            BitSet result = (BitSet) allIds.clone();
+            result.andNot(this.operand.evaluate(tagBitmaps, allIds));
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "!" + this.operand;
+        }
+    }
+
+    private static class And extends TagQuery {
+        private final List<TagQuery> operands;
+
+        private And(List<TagQuery> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        public Set<String> getTags() {
+            return collectTags(this.operands);
+        }
+
+        @Override
+        BitSet evaluate(Function<String, BitSet> tagBitmaps, BitSet allIds) {
+            BitSet result = this.operands.get(0).evaluate(tagBitmaps, allIds);
+            for (int i = 1; i < this.operands.size() && !result.isEmpty(); i++) {
+                TagQuery operand = this.operands.get(i);
+                if (operand instanceof Not) {
+                    // Saves materializing the complement
+                    result.andNot(((Not) operand).operand.evaluate(tagBitmaps, allIds));
+                } else {
+                    result.and(operand.evaluate(tagBitmaps, allIds));
+                }
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + joinOperands(this.operands, " & ") + ")";
+        }
+    }
+
+    private static class Or extends TagQuery {
+        private final List<TagQuery> operands;
+
+        private Or(List<TagQuery> operands) {
+            this.operands = operands;
+        }
+
+        @Override
+        public Set<String> getTags() {
+            return collectTags(this.operands);
+        }
+
+        @Override
+        BitSet evaluate(Function<String, BitSet> tagBitmaps, BitSet allIds) {
+            BitSet result = this.operands.get(0).evaluate(tagBitmaps, allIds);
+            for (int i = 1; i < this.operands.size(); i++) {
+                result.or(this.operands.get(i).evaluate(tagBitmaps, allIds));
+            }
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return "(" + joinOperands(this.operands, " | ") + ")";
+        }
+    }
+
+    /**
+     * An operator, or a tag (which may consist of escaped operator characters)
+     */
+    private static class Token {
+        private final String text;
+        private final boolean operator;
+
+        private Token(String text, boolean operator) {
+            this.text = text;
+            this.operator = operator;
+        }
+
+        private boolean isOperator(String operatorText) {
+            return this.operator && this.text.equals(operatorText);
+        }
+
+        @Override
+        public String toString() {
+            return this.text;
+        }
+    }
+
+    /**
+     * Recursive-descent parser over the expression's tokens
+     */
+    private static class Parser {
+        private final List<Token> tokens;
+        private int position;
+
+        private Parser(List<Token> tokens) {
+            this.tokens = tokens;
+            this.position = 0;
+        }
+
+        private boolean hasNext() {
+            return this.position < this.tokens.size();
+        }
+
+        private Token peek() {
+            return this.tokens.get(this.position);
+        }
+
+        private TagQuery parseOr() {
+            List<TagQuery> operands = new ArrayList<>();
+            operands.add(this.parseAnd());
+            while (this.hasNext() && this.peek().isOperator("|")) {
+                this.position++;
+                operands.add(this.parseAnd());
+            }
+            return operands.size() == 1 ? operands.get(0) : new Or(operands);
+        }
+
+        private TagQuery parseAnd() {
+            List<TagQuery> operands = new ArrayList<>();
+            operands.add(this.parseUnary());
+            while (this.hasNext()) {
+                if (this.peek().isOperator("&")) {
+                    this.position++;
+                } else if (!this.startsOperand(this.peek())) {
+                    break;
+                }
+                operands.add(this.parseUnary());
+            }
+            return operands.size() == 1 ? operands.get(0) : new And(operands);
+        }
+
+        /**
+         * @return Whether the token can begin an operand, in which case it's implicitly and-ed with what precedes it
+         */
+        private boolean startsOperand(Token token) {
+            return !token.operator || token.isOperator("!") || token.isOperator("(");
+        }
+
+        private TagQuery parseUnary() {
+            if (!this.hasNext()) {
+                throw new IllegalArgumentException("Tag expression ended unexpectedly");
+            }
+            Token token = this.tokens.get(this.position++);
+            if (!token.operator) {
+                return new Tag(token.text);
+            }
+            switch (token.text) {
+                case "!":
+                    return new Not(this.parseUnary());
+                case "(":
+                    TagQuery inner = this.parseOr();
+                    if (!this.hasNext() || !this.tokens.get(this.position++).isOperator(")")) {
+                        throw new IllegalArgumentException("Missing ')' in tag expression");
+                    }
+                    return inner;
+                case "&":
+                case "|":
+                case ")":
+                    throw new IllegalArgumentException("Expected a tag but got '" + token + "' in tag expression");
+                default:
+                    throw new IllegalArgumentException("Unhandled operator '" + token + "'; this is a code error");
+            }
+        }
+    }
+
+    private static List<Token> tokenize(String expression) {
+        List<Token> tokens = new ArrayList<>();
+        StringBuilder tag = new StringBuilder();
+        for (int i = 0; i < expression.length(); i++) {
+            char c = expression.charAt(i);
+            if (c == ESCAPE_CHAR) {
+                if (++i == expression.length()) {
+                    throw new IllegalArgumentException("Tag expression '" + expression + "' ends with a bare '"
+                            + ESCAPE_CHAR + "'");
+                }
+                tag.append(expression.charAt(i));
+                continue;
+            }
+            boolean isOperator = OPERATOR_CHARS.indexOf(c) >= 0;
+            if (isOperator || Character.isWhitespace(c)) {
+                if (tag.length() > 0) {
+                    tokens.add(new Token(tag.toString(), false));
+                    tag.setLength(0);
+                }
+                if (isOperator) {
+                    tokens.add(new Token(String.valueOf(c), true));
+                }
+            } else {
+                tag.append(c);
+            }
+        }
+        if (tag.length() > 0) {
+            tokens.add(new Token(tag.toString(), false));
+        }
+        return tokens;
+    }
+
+    private static Set<String> collectTags(List<TagQuery> operands) {
+        Set<String> tags = new HashSet<>();
+        for (TagQuery operand : operands) {
+            tags.addAll(operand.getTags());
+        }
+        return tags;
+    }
+
+    private static String joinOperands(List<TagQuery> operands, String separator) {
+        List<String> operandStrs = new ArrayList<>(operands.size());
+        for (TagQuery operand : operands) {
+            operandStrs.add(operand.toString());
+        }
+        return String.join(separator, operandStrs);
+    }
+}
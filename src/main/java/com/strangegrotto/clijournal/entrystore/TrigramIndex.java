@@ -0,0 +1,103 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.collect.SetMultimap;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Index of strings by their trigrams (all substrings of length 3), so that substring searches only need to look at
+ * the strings that contain every trigram of the keyword rather than at every string
+ */
+class TrigramIndex {
+    private static final int GRAM_LENGTH = 3;
+
+    private final Set<String> values;
+    private final SetMultimap<String, String> postings;
+
+    TrigramIndex() {
+        this.values = new HashSet<>();
+        this.postings = MultimapBuilder.hashKeys().hashSetValues().build();
+    }
+
+    void add(String value) {
+        if (!this.values.add(value)) {
+            return;
+        }
+        for (String gram : getTrigrams(value)) {
+            this.postings.put(gram, value);
+        }
+    }
+
+    void remove(String value) {
+        if (!this.values.remove(value)) {
+            return;
+        }
+        for (String gram : getTrigrams(value)) {
+            this.postings.remove(gram, value);
+        }
+    }
+
+    void clear() {
+        this.values.clear();
+        this.postings.clear();
+    }
+
+    /**
+     * @param keyword Substring to search for
+     * @return All indexed values containing the keyword
+     */
+    Set<String> findContaining(String keyword) {
+        // Keywords too short to have a trigram can't use the index
+        if (keyword.length() < GRAM_LENGTH) {
+            return this.values.stream()
+                    .filter(value -> value.contains(keyword))
+                    .collect(Collectors.toSet());
+        }
+
+        List<Set<String>> postingLists = new ArrayList<>();
+        for (String gram : getTrigrams(keyword)) {
+            Set<String> postingList = this.postings.get(gram);
+            if (postingList.isEmpty()) {
+                return new HashSet<>();
+            }
+            postingLists.add(postingList);
+        }
+
+        // Intersecting smallest-first keeps the working set as small as possible
+        postingLists.sort(Comparator.comparingInt(Set::size));
+        Set<String> candidates = new HashSet<>(postingLists.get(0));
+        for (int i = 1; i < postingLists.size() && !candidates.isEmpty(); i++) {
+            candidates.retainAll(postingLists.get(i));
+        }
+
+        // Having all the keyword's trigrams doesn't mean having them contiguously, so the candidates need verifying
+        candidates.removeIf(candidate -> !candidate.contains(keyword));
+        return candidates;
+    }
+
+    /**
+     * Estimates how many values {@link #findContaining(String)} would return, without intersecting any posting lists
+     * @param keyword Substring to search for
+     * @return Upper bound on the number of indexed values containing the keyword
+     */
+    int estimateContaining(String keyword) {
+        if (keyword.length() < GRAM_LENGTH) {
+            return this.values.size();
+        }
+        int smallestPostingListSize = this.values.size();
+        for (String gram : getTrigrams(keyword)) {
+            smallestPostingListSize = Math.min(smallestPostingListSize, this.postings.get(gram).size());
+        }
+        return smallestPostingListSize;
+    }
+
+    private static Set<String> getTrigrams(String value) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM_LENGTH <= value.length(); i++) {
+            grams.add(value.substring(i, i + GRAM_LENGTH));
+        }
+        return grams;
+    }
+}
@@ -0,0 +1,44 @@
+package com.strangegrotto.clijournal.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Optional;
+
+/**
+ * Reads the JVM's count of bytes allocated by the current thread, which is how the metrics measure allocation
+ */
+public class AllocationCounter {
+    // Empty if the JVM can't count allocations per thread
+    private static final Optional<com.sun.management.ThreadMXBean> THREAD_BEAN = getThreadBean();
+
+    private AllocationCounter() {}
+
+    public static boolean isSupported() {
+        return THREAD_BEAN.isPresent();
+    }
+
+    /**
+     * @return Total bytes allocated by the current thread since it started, or -1 if the JVM can't count them
+     */
+    public static long currentThreadAllocatedBytes() {
+        if (!THREAD_BEAN.isPresent()) {
+            return -1;
+        }
+        return THREAD_BEAN.get().getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private static Optional<com.sun.management.ThreadMXBean> getThreadBean() {
+        ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+        if (!(threadBean instanceof com.sun.management.ThreadMXBean)) {
+            return Optional.empty();
+        }
+        com.sun.management.ThreadMXBean allocationBean = (com.sun.management.ThreadMXBean) threadBean;
+        if (!allocationBean.isThreadAllocatedMemorySupported()) {
+            return Optional.empty();
+        }
+        if (!allocationBean.isThreadAllocatedMemoryEnabled()) {
+            allocationBean.setThreadAllocatedMemoryEnabled(true);
+        }
+        return Optional.of(allocationBean);
+    }
+}
@@ -0,0 +1,88 @@
+package com.strangegrotto.clijournal.metrics;
+
+/**
+ * Histogram of non-negative longs in log-linear buckets: each power of two is split into 16 equal sub-buckets, so
+ * percentiles are accurate to within about 6% while the histogram stays a fixed size however many values it records.
+ * Not thread-safe.
+ */
+public class Histogram {
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below SUB_BUCKETS each get their own bucket; after that, every power of two up to 2^62 gets SUB_BUCKETS
+    private static final int NUM_BUCKETS = SUB_BUCKETS + (63 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[] bucketCounts;
+    private long count;
+    private long sum;
+    private long max;
+
+    public Histogram() {
+        this.bucketCounts = new long[NUM_BUCKETS];
+        this.count = 0;
+        this.sum = 0;
+        this.max = 0;
+    }
+
+    /**
+     * @param value Value to record; negative values are recorded as 0
+     */
+    public void record(long value) {
+        value = Math.max(value, 0);
+        this.bucketCounts[bucketIndex(value)]++;
+        this.count++;
+        this.sum += value;
+        this.max = Math.max(this.max, value);
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return this.count == 0 ? 0 : (double) this.sum / this.count;
+    }
+
+    /**
+     * @param percentile Percentile to get, from 0 to 100
+     * @return Upper bound of the bucket containing the value at the percentile (never more than the maximum recorded
+     *  value), or 0 if nothing has been recorded
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (this.count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * this.count));
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += this.bucketCounts[i];
+            if (seen >= rank) {
+                return Math.min(bucketUpperBound(i), this.max);
+            }
+        }
+        return this.max;
+    }
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int exponent = (index - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long lowerBound = (SUB_BUCKETS + subBucket) * width;
+        return lowerBound + width - 1;
+    }
+}
@@ -0,0 +1,150 @@
+package com.strangegrotto.clijournal.metrics;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Collects per-operation metrics (latency percentiles, call counts, bytes allocated, and result sizes) over the
+ * lifetime of a session, so that regressions show up in long-lived sessions rather than only in benchmarks.
+ * Allocation is measured with the calling thread's allocation counter, so it only counts what the operation itself
+ * allocated on that thread.
+ */
+public class MetricsRegistry {
+    static final String REPORT_HEADER_FORMAT = "%-28s%8s%10s%10s%10s%10s%16s%15s%n";
+    static final String REPORT_ROW_FORMAT = "%-28s%8d%10.2f%10.2f%10.2f%10.2f%16s%15s%n";
+
+    private final Map<String, OperationMetrics> operations;
+    private Optional<ScheduledExecutorService> dumpExecutor;
+
+    public MetricsRegistry() {
+        this.operations = new ConcurrentHashMap<>();
+        this.dumpExecutor = Optional.empty();
+    }
+
+    /**
+     * An in-progress measurement of a single call to an operation
+     */
+    public class Sample {
+        private final String operation;
+        private final long startNanos;
+        private final long startAllocatedBytes;
+
+        private Sample(String operation) {
+            this.operation = operation;
+            this.startAllocatedBytes = AllocationCounter.currentThreadAllocatedBytes();
+            // Read last, so that reading the allocation counter isn't counted in the latency
+            this.startNanos = System.nanoTime();
+        }
+
+        /**
+         * Records the call, for operations that don't return results
+         */
+        public void finish() {
+            this.finish(-1);
+        }
+
+        /**
+         * Records the call
+         * @param resultSize Number of results that the call returned
+         */
+        public void finish(long resultSize) {
+            long latencyNanos = System.nanoTime() - this.startNanos;
+            long allocatedBytes = this.startAllocatedBytes < 0
+                    ? -1
+                    : AllocationCounter.currentThreadAllocatedBytes() - this.startAllocatedBytes;
+            MetricsRegistry.this.operations
+                    .computeIfAbsent(this.operation, OperationMetrics::new)
+                    .record(latencyNanos, allocatedBytes, resultSize);
+        }
+    }
+
+    /**
+     * Starts measuring a call to an operation; the call is only recorded once {@link Sample#finish()} is called
+     * @param operation Name of the operation
+     */
+    public Sample start(String operation) {
+        return new Sample(operation);
+    }
+
+    /**
+     * @return Table of every operation's metrics, sorted by operation name
+     */
+    public String formatReport() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(
+                REPORT_HEADER_FORMAT,
+                "Operation",
+                "Calls",
+                "p50 ms",
+                "p95 ms",
+                "p99 ms",
+                "Max ms",
+                "Alloc KB/call",
+                "Results/call"
+        ));
+        if (!AllocationCounter.isSupported()) {
+            report.append("(this JVM can't count allocations, so allocation isn't reported)")
+                    .append(System.lineSeparator());
+        }
+        new TreeMap<>(this.operations).values().forEach(metrics -> metrics.appendReportRow(report));
+        return report.toString();
+    }
+
+    /**
+     * Clears every operation's metrics
+     */
+    public void reset() {
+        this.operations.clear();
+    }
+
+    /**
+     * Starts overwriting a file with the report at a fixed interval, in the background, replacing any previous dump
+     * schedule. The file is replaced atomically, so it's always a complete report.
+     * @param filepath File to write the report to
+     * @param interval Time between writes
+     * @throws IllegalArgumentException if the interval is shorter than a millisecond
+     */
+    public synchronized void dumpPeriodically(Path filepath, Duration interval) {
+        // Checked before anything is started, so a bad interval leaves any current schedule and no stray thread behind
+        if (interval.toMillis() <= 0) {
+            throw new IllegalArgumentException("Dump interval must be at least 1ms, but got " + interval);
+        }
+        this.stopDumping();
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            // Dumping must never keep the CLI from exiting
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleAtFixedRate(
+                () -> this.dumpTo(filepath),
+                interval.toMillis(),
+                interval.toMillis(),
+                TimeUnit.MILLISECONDS
+        );
+        this.dumpExecutor = Optional.of(executor);
+    }
+
+    public synchronized void stopDumping() {
+        this.dumpExecutor.ifPresent(ExecutorService::shutdownNow);
+        this.dumpExecutor = Optional.empty();
+    }
+
+    private void dumpTo(Path filepath) {
+        String contents = "Metrics as of " + LocalDateTime.now() + System.lineSeparator() + this.formatReport();
+        try {
+            Path tempFilepath = filepath.resolveSibling(filepath.getFileName() + ".tmp");
+            Files.write(tempFilepath, contents.getBytes(StandardCharsets.UTF_8));
+            Files.move(tempFilepath, filepath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            // Nothing useful we can do from a background thread; the next dump will try again
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.strangegrotto.clijournal.metrics;
+
+/**
+ * Latency, allocation, and result size distributions of every call to a single operation (e.g. a command)
+ */
+public class OperationMetrics {
+    private final String operation;
+    private final Histogram latencyNanos;
+    private final Histogram allocatedBytes;
+    private final Histogram resultSizes;
+
+    OperationMetrics(String operation) {
+        this.operation = operation;
+        this.latencyNanos = new Histogram();
+        this.allocatedBytes = new Histogram();
+        this.resultSizes = new Histogram();
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    /**
+     * @param latencyNanos How long the call took
+     * @param allocatedBytes Bytes that the call allocated, or negative if unknown
+     * @param resultSize Number of results that the call returned, or negative if it doesn't return results
+     */
+    synchronized void record(long latencyNanos, long allocatedBytes, long resultSize) {
+        this.latencyNanos.record(latencyNanos);
+        if (allocatedBytes >= 0) {
+            this.allocatedBytes.record(allocatedBytes);
+        }
+        if (resultSize >= 0) {
+            this.resultSizes.record(resultSize);
+        }
+    }
+
+    /**
+     * Appends a row of the report that {@link MetricsRegistry#formatReport()} produces
+     */
+    synchronized void appendReportRow(StringBuilder report) {
+        report.append(String.format(
+                MetricsRegistry.REPORT_ROW_FORMAT,
+                this.operation,
+                this.latencyNanos.getCount(),
+                this.latencyNanos.getValueAtPercentile(50) / 1e6,
+                this.latencyNanos.getValueAtPercentile(95) / 1e6,
+                this.latencyNanos.getValueAtPercentile(99) / 1e6,
+                this.latencyNanos.getMax() / 1e6,
+                this.allocatedBytes.getCount() == 0 ? "-" : String.format("%.1f", this.allocatedBytes.getMean() / 1024),
+                this.resultSizes.getCount() == 0 ? "-" : String.format("%.1f", this.resultSizes.getMean())
+        ));
+    }
+}
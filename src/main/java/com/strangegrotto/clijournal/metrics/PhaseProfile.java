@@ -0,0 +1,161 @@
+package com.strangegrotto.clijournal.metrics;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Breakdown of a multi-step process (e.g. startup) into the time and allocation of each of its phases, in the order
+ * they ran. Phases are either marked off as the calling thread finishes them, or added with measurements taken
+ * elsewhere (e.g. summed across worker threads). Not thread-safe.
+ */
+public class PhaseProfile {
+    private static final String ROW_FORMAT = "%-44s%12s%14s%n";
+
+    private final List<Phase> phases;
+    private long lastMarkNanos;
+    private long lastMarkAllocatedBytes;
+
+    /**
+     * Starts profiling, so the first {@link #mark(String)} measures from now
+     */
+    public PhaseProfile() {
+        this.phases = new ArrayList<>();
+        this.lastMarkAllocatedBytes = AllocationCounter.currentThreadAllocatedBytes();
+        this.lastMarkNanos = System.nanoTime();
+    }
+
+    public static class Phase {
+        private final String name;
+        private final int depth;
+        private final long nanos;
+        private final long allocatedBytes;
+
+        private Phase(String name, int depth, long nanos, long allocatedBytes) {
+            this.name = name;
+            this.depth = depth;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return How deeply the phase is nested inside other phases, where 0 is a top-level phase
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        /**
+         * @return Bytes allocated during the phase, or negative if unknown
+         */
+        public long getAllocatedBytes() {
+            return allocatedBytes;
+        }
+    }
+
+    /**
+     * Records a phase which the calling thread has just finished, and which started at the previous mark (or when the
+     * profile was created)
+     * @param name Name of the phase
+     */
+    public void mark(String name) {
+        long allocatedBytes = AllocationCounter.currentThreadAllocatedBytes();
+        long nanos = System.nanoTime();
+        this.add(
+                name,
+                nanos - this.lastMarkNanos,
+                this.lastMarkAllocatedBytes < 0 ? -1 : allocatedBytes - this.lastMarkAllocatedBytes
+        );
+        this.lastMarkAllocatedBytes = allocatedBytes;
+        this.lastMarkNanos = nanos;
+    }
+
+    /**
+     * Records a phase that was measured elsewhere; this doesn't move the start of the next {@link #mark(String)}
+     * @param name Name of the phase
+     * @param nanos How long the phase took
+     * @param allocatedBytes Bytes allocated during the phase, or negative if unknown
+     */
+    public void add(String name, long nanos, long allocatedBytes) {
+        this.phases.add(new Phase(name, 0, nanos, allocatedBytes));
+    }
+
+    /**
+     * Records every phase of another profile as a sub-phase of this profile's last phase
+     * @param subprofile Profile of the last phase's steps
+     */
+    public void addSubphases(PhaseProfile subprofile) {
+        for (Phase phase : subprofile.phases) {
+            this.phases.add(new Phase(phase.name, phase.depth + 1, phase.nanos, phase.allocatedBytes));
+        }
+    }
+
+    public List<Phase> getPhases() {
+        return Collections.unmodifiableList(phases);
+    }
+
+    /**
+     * @return Time taken by the top-level phases
+     */
+    public long getTotalNanos() {
+        long totalNanos = 0;
+        for (Phase phase : this.phases) {
+            if (phase.depth == 0) {
+                totalNanos += phase.nanos;
+            }
+        }
+        return totalNanos;
+    }
+
+    /**
+     * @return Bytes allocated during the top-level phases, or negative if unknown for any of them
+     */
+    public long getTotalAllocatedBytes() {
+        long totalAllocatedBytes = 0;
+        for (Phase phase : this.phases) {
+            if (phase.depth == 0) {
+                if (phase.allocatedBytes < 0) {
+                    return -1;
+                }
+                totalAllocatedBytes += phase.allocatedBytes;
+            }
+        }
+        return totalAllocatedBytes;
+    }
+
+    /**
+     * @return Table of every phase's time and allocation, with sub-phases indented under their parent and a total of
+     *  the top-level phases
+     */
+    public String format() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(ROW_FORMAT, "Phase", "Time ms", "Alloc KB"));
+        for (Phase phase : this.phases) {
+            report.append(formatRow(phase.name, phase.depth, phase.nanos, phase.allocatedBytes));
+        }
+        report.append(formatRow("Total", 0, this.getTotalNanos(), this.getTotalAllocatedBytes()));
+        return report.toString();
+    }
+
+    private static String formatRow(String name, int depth, long nanos, long allocatedBytes) {
+        StringBuilder indentedName = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            indentedName.append("  ");
+        }
+        indentedName.append(name);
+        return String.format(
+                ROW_FORMAT,
+                indentedName,
+                String.format("%.2f", nanos / 1e6),
+                allocatedBytes < 0 ? "-" : String.format("%.1f", allocatedBytes / 1024.0)
+        );
+    }
+}
@@ -0,0 +1,191 @@
+package com.strangegrotto.clijournal;
+
+import com.strangegrotto.clijournal.commands.CommandResultsRecord;
+import com.strangegrotto.clijournal.commands.ResultReferenceTranslator;
+import com.strangegrotto.clijournal.commands.verbs.*;
+import com.strangegrotto.clijournal.entrystore.EntryStore;
+import com.strangegrotto.clijournal.entrystore.FederatedEntryStore;
+import com.strangegrotto.clijournal.entrystore.JournalGenerator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Generates journals of each of the given sizes and measures what users feel at that size: startup with and without
+ * the on-disk cache, reindexing, the heap the store takes up, and the latency of common commands. Run with
+ * './gradlew scaleTest', optionally with '-PscaleTestSizes=10000,100000'.
+ */
+public class ScaleTest {
+    private static final List<Integer> DEFAULT_SIZES = Arrays.asList(10_000, 100_000, 1_000_000);
+    private static final int WARMUP_RUNS = 2;
+    private static final int MEASURED_RUNS = 10;
+    // Bodies are kept small so that generating the largest journals doesn't take longer than measuring them
+    private static final int MEDIAN_BODY_BYTES = 256;
+
+    private static final PrintStream REPORT = System.out;
+
+    public static void main(String[] args) throws IOException {
+        List<Integer> sizes = new ArrayList<>();
+        if (args.length > 0) {
+            for (String size : args[0].split(",")) {
+                sizes.add(Integer.parseInt(size.trim()));
+            }
+        } else {
+            sizes.addAll(DEFAULT_SIZES);
+        }
+
+        for (int size : sizes) {
+            runScale(size);
+        }
+    }
+
+    private static void runScale(int numEntries) throws IOException {
+        REPORT.println("== " + numEntries + " entries ==");
+        JournalGenerator.Config config = new JournalGenerator.Config()
+                .withNumEntries(numEntries)
+                .withBodySizes(MEDIAN_BODY_BYTES, 1.0);
+
+        long generateStartNanos = System.nanoTime();
+        try (JournalGenerator.GeneratedJournal journal = JournalGenerator.generate(config)) {
+            report("generate journal", System.nanoTime() - generateStartNanos);
+            Path stateDirpath = Files.createTempDirectory("clijournal-scale-state");
+            try {
+                measureJournal(journal, config, stateDirpath);
+            } finally {
+                deleteRecursively(stateDirpath);
+            }
+        }
+        REPORT.println();
+    }
+
+    private static void measureJournal(
+            JournalGenerator.GeneratedJournal journal,
+            JournalGenerator.Config config,
+            Path stateDirpath) throws IOException {
+        Path journalDirpath = journal.getDirpath();
+        // Far enough in the past that the store trusts the directory's modification time, so the cache gets used
+        long dirModifiedMillis = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+        Files.setLastModifiedTime(journalDirpath, FileTime.fromMillis(dirModifiedMillis));
+
+        long heapBeforeBytes = usedHeapBytes();
+        long coldStartNanos = System.nanoTime();
+        EntryStore entryStore = new EntryStore(journalDirpath, Optional.of(stateDirpath));
+        report("startup (no cache)", System.nanoTime() - coldStartNanos);
+        long heapAfterBytes = usedHeapBytes();
+        REPORT.println(String.format("  %-48s %10.1f MB", "entry store heap", (heapAfterBytes - heapBeforeBytes) / 1e6));
+
+        long warmStartNanos = System.nanoTime();
+        new EntryStore(journalDirpath, Optional.of(stateDirpath));
+        report("startup (cached)", System.nanoTime() - warmStartNanos);
+
+        List<Long> reindexNanos = new ArrayList<>();
+        for (int i = 0; i < WARMUP_RUNS + MEASURED_RUNS; i++) {
+            // Changing the modification time forces a directory listing, though no filenames need parsing
+            Files.setLastModifiedTime(journalDirpath, FileTime.fromMillis(--dirModifiedMillis));
+            long startNanos = System.nanoTime();
+            entryStore.reindex();
+            if (i >= WARMUP_RUNS) {
+                reindexNanos.add(System.nanoTime() - startNanos);
+            }
+        }
+        reportPercentiles("reindex", reindexNanos);
+
+        String commonTag = config.getTagVocabulary().get(0);
+        String commonWord = config.getNameWords().get(0);
+        ResultReferenceTranslator referenceTranslator = new ResultReferenceTranslator(new CommandResultsRecord());
+        FederatedEntryStore federatedStore = new FederatedEntryStore(entryStore);
+        Map<String, Command> commands = new LinkedHashMap<>();
+        commands.put("ls", new ListEntriesCommand(federatedStore));
+        commands.put("tags", new ListTagsCommand(federatedStore));
+        commands.put("find", new FindEntriesCommand(federatedStore, referenceTranslator));
+
+        List<List<String>> commandLines = Arrays.asList(
+                Arrays.asList("ls"),
+                Arrays.asList("ls", "-n"),
+                Arrays.asList("ls", "--tail", "20"),
+                Arrays.asList("ls", "--since", "2019-06"),
+                Arrays.asList("tags"),
+                Arrays.asList("find", commonWord),
+                Arrays.asList("find", "-t", commonTag),
+                Arrays.asList("find", "-f", commonWord.substring(1)),
+                Arrays.asList("find", "-q", "tag:" + commonTag, "after:2019", "name:" + commonWord),
+                // The first content search builds the content index; later ones only check for changes
+                Arrays.asList("find", "-c", "deadline", "customer")
+        );
+        for (List<String> commandLine : commandLines) {
+            Command command = commands.get(commandLine.get(0));
+            List<String> args = commandLine.subList(1, commandLine.size());
+            List<Long> latencyNanos = new ArrayList<>();
+            for (int i = 0; i < WARMUP_RUNS + MEASURED_RUNS; i++) {
+                long startNanos = System.nanoTime();
+                runSilently(command, args);
+                long elapsedNanos = System.nanoTime() - startNanos;
+                if (i == 0) {
+                    report(String.join(" ", commandLine) + " (first run)", elapsedNanos);
+                }
+                if (i >= WARMUP_RUNS) {
+                    latencyNanos.add(elapsedNanos);
+                }
+            }
+            reportPercentiles(String.join(" ", commandLine), latencyNanos);
+        }
+    }
+
+    /**
+     * Runs a command with its output thrown away, so that the terminal isn't what's being measured
+     */
+    private static void runSilently(Command command, List<String> args) {
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            command.execute(args);
+        } finally {
+            System.setOut(stdout);
+        }
+    }
+
+    private static long usedHeapBytes() {
+        MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
+        // Several passes, since a single System.gc() doesn't reliably collect everything
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memoryBean.getHeapMemoryUsage().getUsed();
+    }
+
+    private static void report(String measurement, long nanos) {
+        REPORT.println(String.format("  %-48s %10.1f ms", measurement, nanos / 1e6));
+    }
+
+    private static void reportPercentiles(String measurement, List<Long> nanos) {
+        List<Long> sorted = new ArrayList<>(nanos);
+        Collections.sort(sorted);
+        REPORT.println(String.format(
+                "  %-48s %10.1f ms p50 %10.1f ms p95 %10.1f ms max",
+                measurement,
+                sorted.get(sorted.size() / 2) / 1e6,
+                sorted.get((int) Math.ceil(sorted.size() * 0.95) - 1) / 1e6,
+                sorted.get(sorted.size() - 1) / 1e6
+        ));
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            try (Stream<Path> children = Files.list(path)) {
+                for (Path child : (Iterable<Path>) children::iterator) {
+                    deleteRecursively(child);
+                }
+            }
+        }
+        Files.delete(path);
+    }
+}
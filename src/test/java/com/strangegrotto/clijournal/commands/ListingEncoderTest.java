@@ -0,0 +1,107 @@
+package com.strangegrotto.clijournal.commands;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ListingEncoderTest {
+    private static final LocalDateTime TIMESTAMP = LocalDateTime.of(2020, 3, 22, 18, 56, 0);
+
+    private static String encodeOneRecord(ListingFormat format, String path, List<String> tags) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ListingEncoder encoder = ListingEncoder.create(format, out);
+        encoder.startRecord();
+        encoder.field("path", path)
+                .timestampField("timestamp", TIMESTAMP)
+                .listField("tags", tags);
+        encoder.endRecord();
+        encoder.flush();
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testSurrogatePairsAreEncodedAsOneCodePoint() {
+        // U+1F600 is a single 4-byte UTF-8 sequence, not two 3-byte ones
+        String path = "smile-\uD83D\uDE00.md";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ListingEncoder encoder = ListingEncoder.create(ListingFormat.NULL, out);
+        encoder.startRecord();
+        encoder.field("path", path);
+        encoder.endRecord();
+        encoder.flush();
+
+        byte[] expectedPath = path.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expectedPath.length + 1, out.size());
+        assertEquals(path + "\0", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testUnpairedSurrogatesAreReplaced() {
+        assertEquals(
+                "{\"path\":\"a?b?\",\"timestamp\":\"2020-03-22T18:56:00\",\"tags\":[\"?\"]}\n",
+                encodeOneRecord(ListingFormat.JSONL, "a\uD83Db\uDE00", List.of("\uDE00"))
+        );
+    }
+
+    @Test
+    public void testJsonEscapesControlCharacters() {
+        assertEquals(
+                "{\"path\":\"q\\\"b\\\\n\\n\\r\\t\\u0000\\u001f\",\"timestamp\":\"2020-03-22T18:56:00\","
+                        + "\"tags\":[\"\\u0007\"]}\n",
+                encodeOneRecord(ListingFormat.JSONL, "q\"b\\n\n\r\t\u0000\u001f", List.of("\u0007"))
+        );
+    }
+
+    @Test
+    public void testTsvEscapesSeparatorsInFields() {
+        assertEquals(
+                "a\\tb\\nc\\rd\\\\e\t2020-03-22T18:56:00\tx\\ty,z\n",
+                encodeOneRecord(ListingFormat.TSV, "a\tb\nc\rd\\e", List.of("x\ty", "z"))
+        );
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ListingEncoder encoder = ListingEncoder.create(ListingFormat.TSV, out);
+        encoder.startRecord();
+        encoder.field("path", null).timestampField("timestamp", null).listField("tags", List.of());
+        encoder.endRecord();
+        encoder.flush();
+        assertEquals("\t\t\n", new String(out.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testNulDelimitedWritesOnlyTheFirstFieldUnescaped() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ListingEncoder encoder = ListingEncoder.create(ListingFormat.NULL, out);
+        for (String path : List.of("/journal/a\tb.md", "/journal/new\nline.md")) {
+            encoder.startRecord();
+            encoder.field("path", path).timestampField("timestamp", TIMESTAMP).listField("tags", List.of("x"));
+            encoder.endRecord();
+        }
+        encoder.flush();
+        assertEquals(
+                "/journal/a\tb.md\0/journal/new\nline.md\0",
+                new String(out.toByteArray(), StandardCharsets.UTF_8)
+        );
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testNulDelimitedRejectsListAsFirstField() {
+        ListingEncoder encoder = ListingEncoder.create(ListingFormat.NULL, new ByteArrayOutputStream());
+        encoder.startRecord();
+        encoder.listField("tags", List.of("x"));
+    }
+
+    @Test
+    public void testRecordsLargerThanTheBufferAreWrittenWhole() {
+        StringBuilder path = new StringBuilder();
+        while (path.length() < 200 * 1024) {
+            path.append("\u00e9\uD83D\uDE00\u4e2d\t");
+        }
+        String encoded = encodeOneRecord(ListingFormat.TSV, path.toString(), List.of());
+        assertEquals(path.toString().replace("\t", "\\t") + "\t2020-03-22T18:56:00\t\n", encoded);
+    }
+}
@@ -0,0 +1,90 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class EntryFilterTest {
+    private static EntryFilter compileWithDefaults(String... rules) {
+        List<String> ruleLines = new ArrayList<>(EntryFilter.DEFAULT_RULES);
+        ruleLines.addAll(Arrays.asList(rules));
+        return EntryFilter.compile(ruleLines);
+    }
+
+    @Test
+    public void testDefaultRules() {
+        EntryFilter filter = compileWithDefaults();
+        assertTrue(filter.isIgnored(".entry.md.swp"));
+        assertTrue(filter.isIgnored(".git"));
+        assertTrue(filter.isIgnored(EntryFilter.IGNORE_FILENAME));
+        assertFalse(filter.isIgnored(".gitignore"));
+        assertFalse(filter.isIgnored("entry~2020-03-22_18-56-00~tag.md"));
+    }
+
+    @Test
+    public void testGlobs() {
+        EntryFilter filter = compileWithDefaults(
+                "# Comment",
+                "",
+                "*.tmp",
+                "draft-?.md",
+                "[!a-c]*.bak",
+                "/anchored.txt",
+                "literal\\*star",
+                "ignored-dir/"
+        );
+        assertTrue(filter.isIgnored("notes.tmp"));
+        assertFalse(filter.isIgnored("notes.tmp.md"));
+        assertTrue(filter.isIgnored("draft-1.md"));
+        assertFalse(filter.isIgnored("draft-12.md"));
+        assertTrue(filter.isIgnored("zebra.bak"));
+        assertFalse(filter.isIgnored("apple.bak"));
+        assertTrue(filter.isIgnored("anchored.txt"));
+        assertTrue(filter.isIgnored("literal*star"));
+        assertFalse(filter.isIgnored("literalXstar"));
+        assertFalse(filter.isIgnored("# Comment"));
+        assertFalse(filter.isIgnored("ignored-dir"));
+    }
+
+    @Test
+    public void testRegexesAndNegationLastMatchWins() {
+        EntryFilter filter = compileWithDefaults(
+                "re:scratch-\\d+\\.md",
+                "!scratch-1.md",
+                "!re:(?i)KEEP.*",
+                "keep-not.md"
+        );
+        assertTrue(filter.isIgnored("scratch-22.md"));
+        assertFalse(filter.isIgnored("scratch-1.md"));
+        assertFalse(filter.isIgnored("keep.swp"));
+        assertTrue(filter.isIgnored("keep-not.md"));
+    }
+
+    @Test
+    public void testRulesThatCantBeCombined() {
+        // Named groups can't be repeated in a single pattern, so these have to be checked one by one
+        EntryFilter filter = compileWithDefaults("re:(?<n>a)x", "!re:(?<n>a)xy", "re:(?<n>a)xyz");
+        assertTrue(filter.isIgnored("ax"));
+        assertFalse(filter.isIgnored("axy"));
+        assertTrue(filter.isIgnored("axyz"));
+        assertFalse(filter.isIgnored("b"));
+    }
+
+    @Test
+    public void testBackreferencesKeepTheirGroupNumbers() {
+        // Inside the combined pattern, \1 would refer to a group added around the rules rather than to (\w)
+        EntryFilter filter = compileWithDefaults("re:(x)y", "re:(\\w)\\1.*\\.md");
+        assertTrue(filter.isIgnored("aab.md"));
+        assertFalse(filter.isIgnored("abb.md"));
+        assertTrue(filter.isIgnored("xy"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidRegex() {
+        compileWithDefaults("re:(unclosed");
+    }
+}
@@ -0,0 +1,89 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import org.junit.Test;
+
+import java.time.LocalDateTime;
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class EntryMetadataFormatterTest {
+    private final EntryMetadataFormatter formatter = new EntryMetadataFormatter(
+            "~",
+            ",",
+            Arrays.asList("yyyy-MM-dd_HH-mm", "yyyy-MM-dd_HH-mm-ss", "yyyy-MM-dd_HH:mm:ss"),
+            "yyyy-MM-dd_HH-mm-ss"
+    );
+
+    @Test
+    public void testParsesAllFragments() {
+        EntryMetadata metadata = this.formatter.parseMetadata("my-entry~2020-03-22_18-56-07~tag1,tag2.md");
+        assertEquals("my-entry", metadata.getNameSansExt());
+        assertEquals("md", metadata.getExtension());
+        assertEquals(Optional.of(LocalDateTime.of(2020, 3, 22, 18, 56, 7)), metadata.getCreationTimestamp());
+        assertEquals(new HashSet<>(Arrays.asList("tag1", "tag2")), metadata.getTags());
+    }
+
+    @Test
+    public void testParsesEveryAcceptedTimestampFormat() {
+        assertEquals(
+                Optional.of(LocalDateTime.of(2020, 3, 22, 18, 56)),
+                this.formatter.parseMetadata("e~2020-03-22_18-56").getCreationTimestamp()
+        );
+        assertEquals(
+                Optional.of(LocalDateTime.of(2020, 3, 22, 18, 56, 7)),
+                this.formatter.parseMetadata("e~2020-03-22_18:56:07.md").getCreationTimestamp()
+        );
+    }
+
+    @Test
+    public void testResolvesTimestampsLikeDateTimeFormatter() {
+        // Days past the end of the month are clamped, and 24:00 is the next day's midnight
+        assertEquals(
+                Optional.of(LocalDateTime.of(2021, 2, 28, 10, 0)),
+                this.formatter.parseMetadata("e~2021-02-30_10-00").getCreationTimestamp()
+        );
+        assertEquals(
+                Optional.of(LocalDateTime.of(2020, 3, 1, 0, 0)),
+                this.formatter.parseMetadata("e~2020-02-29_24-00").getCreationTimestamp()
+        );
+        assertFalse(this.formatter.parseMetadata("e~2020-13-01_10-00").getCreationTimestamp().isPresent());
+        assertFalse(this.formatter.parseMetadata("e~2020-01-01_10-00-60").getCreationTimestamp().isPresent());
+        assertFalse(this.formatter.parseMetadata("e~0000-01-01_10-00").getCreationTimestamp().isPresent());
+        // Years that don't fit the fixed-width fast path still parse
+        assertEquals(
+                Optional.of(LocalDateTime.of(20201, 1, 1, 10, 0)),
+                this.formatter.parseMetadata("e~+20201-01-01_10-00").getCreationTimestamp()
+        );
+    }
+
+    @Test
+    public void testSplitsLikeStringSplit() {
+        EntryMetadata noTimestamp = this.formatter.parseMetadata("e~~a,,b,");
+        assertFalse(noTimestamp.getCreationTimestamp().isPresent());
+        assertEquals(new HashSet<>(Arrays.asList("a", "", "b")), noTimestamp.getTags());
+
+        assertEquals(new HashSet<>(), this.formatter.parseMetadata("e~2020-03-22_18-56~,").getTags());
+
+        EntryMetadata noMetadata = this.formatter.parseMetadata("notes.tar.gz");
+        assertEquals("notes.tar", noMetadata.getNameSansExt());
+        assertEquals("gz", noMetadata.getExtension());
+        assertFalse(noMetadata.getCreationTimestamp().isPresent());
+        assertTrue(noMetadata.getTags().isEmpty());
+    }
+
+    @Test
+    public void testRoundTripsFormattedMetadata() {
+        EntryMetadata metadata = new EntryMetadata(
+                "entry",
+                "md",
+                Optional.of(LocalDateTime.of(2020, 3, 22, 18, 56, 7)),
+                new HashSet<>(Collections.singletonList("tag"))
+        );
+        EntryMetadata parsed = this.formatter.parseMetadata(this.formatter.formatMetadata(metadata));
+        assertEquals(metadata.getNameSansExt(), parsed.getNameSansExt());
+        assertEquals(metadata.getExtension(), parsed.getExtension());
+        assertEquals(metadata.getCreationTimestamp(), parsed.getCreationTimestamp());
+        assertEquals(metadata.getTags(), parsed.getTags());
+    }
+}
@@ -0,0 +1,131 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+public class FederatedEntryStoreTest {
+    private static final String HOME_JOURNAL = "home";
+    private static final String WORK_JOURNAL = "work";
+    private static final int ENTRIES_PER_JOURNAL = 200;
+
+    private static JournalGenerator.GeneratedJournal homeJournal;
+    private static JournalGenerator.GeneratedJournal workJournal;
+    private static FederatedEntryStore store;
+
+    @BeforeClass
+    public static void generateJournals() throws IOException {
+        homeJournal = JournalGenerator.generate(newConfig(1));
+        workJournal = JournalGenerator.generate(newConfig(2));
+        Map<String, EntryStore> journalStores = new LinkedHashMap<>();
+        journalStores.put(HOME_JOURNAL, new EntryStore(homeJournal.getDirpath()));
+        journalStores.put(WORK_JOURNAL, new EntryStore(workJournal.getDirpath()));
+        store = new FederatedEntryStore(journalStores);
+    }
+
+    @AfterClass
+    public static void deleteJournals() throws IOException {
+        homeJournal.close();
+        workJournal.close();
+    }
+
+    private static JournalGenerator.Config newConfig(long seed) {
+        return new JournalGenerator.Config()
+                .withNumEntries(ENTRIES_PER_JOURNAL)
+                .withBodySizes(0, 0)
+                .withSeed(seed);
+    }
+
+    private static Set<String> qualifiedFilenames() {
+        Set<String> ids = new HashSet<>();
+        homeJournal.getFilenames().forEach(filename -> ids.add(HOME_JOURNAL + Entry.JOURNAL_ID_SEPARATOR + filename));
+        workJournal.getFilenames().forEach(filename -> ids.add(WORK_JOURNAL + Entry.JOURNAL_ID_SEPARATOR + filename));
+        return ids;
+    }
+
+    @Test
+    public void testStreamAllEntriesMergesJournalsInOrder() {
+        for (EntryOrder order : EntryOrder.values()) {
+            for (boolean descending : new boolean[]{false, true}) {
+                List<Entry> entries = store.streamAllEntries(order, descending).collect(Collectors.toList());
+                assertEquals(2 * ENTRIES_PER_JOURNAL, entries.size());
+                assertEquals(
+                        qualifiedFilenames(),
+                        entries.stream().map(Entry::getId).collect(Collectors.toSet())
+                );
+
+                Comparator<Entry> comparator = descending
+                        ? order.getComparator().reversed()
+                        : order.getComparator();
+                for (int i = 1; i < entries.size(); i++) {
+                    assertTrue(
+                            order + (descending ? " descending" : "") + " out of order at " + i,
+                            comparator.compare(entries.get(i - 1), entries.get(i)) <= 0
+                    );
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testQualifiedIdsRoundTrip() {
+        List<Entry> entries = store.streamAllEntries(EntryOrder.NAME, false).collect(Collectors.toList());
+        List<String> ids = entries.stream().map(Entry::getId).collect(Collectors.toList());
+
+        List<Entry> lookedUp = store.getByIds(ids);
+        assertEquals(ids, lookedUp.stream().map(Entry::getId).collect(Collectors.toList()));
+        for (int i = 0; i < entries.size(); i++) {
+            assertEquals(entries.get(i).getFilepath(), lookedUp.get(i).getFilepath());
+        }
+    }
+
+    @Test
+    public void testIdsAreRoutedToTheirJournal() {
+        String workFilename = workJournal.getFilenames().get(0);
+
+        List<Entry> qualified = store.getByIds(List.of(WORK_JOURNAL + Entry.JOURNAL_ID_SEPARATOR + workFilename));
+        assertEquals(1, qualified.size());
+        assertEquals(workJournal.getDirpath().toAbsolutePath().resolve(workFilename), qualified.get(0).getFilepath());
+
+        // Unqualified IDs are looked up in every journal, and come back qualified with the journal they were found in
+        List<String> unqualifiedIds = store.getByIds(List.of(workFilename)).stream()
+                .map(Entry::getId)
+                .collect(Collectors.toList());
+        assertTrue(unqualifiedIds.contains(WORK_JOURNAL + Entry.JOURNAL_ID_SEPARATOR + workFilename));
+        assertEquals(homeJournal.getFilenames().contains(workFilename) ? 2 : 1, unqualifiedIds.size());
+
+        assertTrue(store.getByIds(List.of(HOME_JOURNAL + Entry.JOURNAL_ID_SEPARATOR + "missing.md")).isEmpty());
+        assertTrue(store.getByIds(List.of("nope" + Entry.JOURNAL_ID_SEPARATOR + workFilename)).isEmpty());
+    }
+
+    @Test
+    public void testNewEntriesAreRoutedToTheirJournal() {
+        LocalDateTime timestamp = LocalDateTime.of(2020, 3, 22, 18, 56, 0);
+
+        assertEquals(
+                homeJournal.getDirpath().toAbsolutePath(),
+                store.getNewEntryFilepath("entry.md", timestamp, Set.of()).getParent()
+        );
+        assertEquals(
+                workJournal.getDirpath().toAbsolutePath(),
+                store.getNewEntryFilepath(WORK_JOURNAL + Entry.JOURNAL_ID_SEPARATOR + "entry.md", timestamp, Set.of())
+                        .getParent()
+        );
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNewEntryInUnknownJournalIsRejected() {
+        store.getNewEntryFilepath(
+                "nope" + Entry.JOURNAL_ID_SEPARATOR + "entry.md",
+                LocalDateTime.of(2020, 3, 22, 18, 56, 0),
+                Set.of()
+        );
+    }
+}
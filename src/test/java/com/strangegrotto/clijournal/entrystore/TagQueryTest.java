@@ -0,0 +1,75 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import org.junit.Test;
+
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TagQueryTest {
+    private static final String ENTRY_TAGS = "a:0,1,2,3 b:4,5 c:0,4,6 d:1,5,7";
+
+    /**
+     * Evaluates the query over the entries of {@link #ENTRY_TAGS}, in which entry IDs are listed under their tags
+     */
+    private static BitSet evaluate(String expression) {
+        Map<String, BitSet> tagBitmaps = new HashMap<>();
+        BitSet allIds = new BitSet();
+        for (String tagIds : ENTRY_TAGS.split(" ")) {
+            String[] tagAndIds = tagIds.split(":");
+            BitSet ids = new BitSet();
+            for (String id : tagAndIds[1].split(",")) {
+                ids.set(Integer.parseInt(id));
+            }
+            tagBitmaps.put(tagAndIds[0], ids);
+            allIds.or(ids);
+        }
+        return TagQuery.parse(expression).evaluate(tag -> tagBitmaps.getOrDefault(tag, new BitSet()), allIds);
+    }
+
+    private static BitSet ids(int... ids) {
+        BitSet bitSet = new BitSet();
+        for (int id : ids) {
+            bitSet.set(id);
+        }
+        return bitSet;
+    }
+
+    @Test
+    public void testAdjacentTermsAreAnded() {
+        assertEquals(ids(0), evaluate("a c"));
+        assertEquals(evaluate("a & c"), evaluate("a c"));
+        assertEquals(ids(2, 3), evaluate("a !c !d"));
+        // Adjacency binds like '&', so tighter than '|'
+        assertEquals(ids(0, 5), evaluate("a c | b d"));
+    }
+
+    @Test
+    public void testAdjacentGroupsAreAnded() {
+        assertEquals(ids(0, 1, 4, 5), evaluate("(a | b) (c | d)"));
+        assertEquals(ids(0, 1), evaluate("a (c | d)"));
+        assertEquals(ids(1, 5), evaluate("(a | b) d"));
+    }
+
+    @Test
+    public void testEscapedOperatorsArePartOfTheTag() {
+        TagQuery query = TagQuery.parse("R\\&D | a\\ b & !\\(draft\\)");
+        assertEquals(Set.of("R&D", "a b", "(draft)"), query.getTags());
+    }
+
+    @Test
+    public void testEscapedTagsRoundTrip() {
+        String tag = "a&b|c!(d) e\\f";
+        TagQuery query = TagQuery.parse(TagQuery.escapeTag(tag));
+        assertEquals(Set.of(tag), query.getTags());
+        assertEquals(Set.of(tag), TagQuery.parse(query.toString()).getTags());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTrailingEscapeIsRejected() {
+        TagQuery.parse("work\\");
+    }
+}
@@ -0,0 +1,300 @@
+package com.strangegrotto.clijournal.entrystore;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * Generates realistic synthetic journals, for testing and benchmarking at sizes that nobody's real journal can be
+ * shared at. Everything is drawn from a seeded random source, so the same config always generates the same journal.
+ */
+public class JournalGenerator {
+    public static final List<String> DEFAULT_NAME_WORDS = Collections.unmodifiableList(Arrays.asList(
+            "meeting", "notes", "ideas", "standup", "review", "plan", "retro", "reading", "travel", "recipe",
+            "workout", "budget", "design", "interview", "todo", "draft", "journal", "project", "weekly", "call"
+    ));
+    private static final int DEFAULT_TAG_VOCABULARY_SIZE = 200;
+    private static final List<String> BODY_WORDS = Arrays.asList(
+            "the", "of", "and", "to", "a", "in", "is", "that", "for", "it", "was", "on", "with", "we", "today",
+            "decided", "discussed", "quick", "brown", "fox", "deadline", "release", "bug", "customer", "idea"
+    );
+    // Keeps a few very large bodies from dominating the size of the journal
+    private static final int MAX_BODY_BYTES = 1024 * 1024;
+
+    /**
+     * Parameters of the generated journal, with defaults resembling a few years of a real journal
+     */
+    public static class Config {
+        private int numEntries = 1000;
+        private List<String> nameWords = DEFAULT_NAME_WORDS;
+        private int maxNameWords = 3;
+        private List<String> tagVocabulary = IntStream.range(0, DEFAULT_TAG_VOCABULARY_SIZE)
+                .mapToObj(rank -> "tag" + rank)
+                .collect(Collectors.toList());
+        private double tagZipfExponent = 1.0;
+        private int maxTagsPerEntry = 3;
+        private List<String> timestampFormats = EntryStore.ACCEPTED_TIMESTAMP_FORMATS;
+        private LocalDateTime firstTimestamp = LocalDateTime.of(2015, 1, 1, 0, 0, 0);
+        private LocalDateTime lastTimestamp = LocalDateTime.of(2020, 1, 1, 0, 0, 0);
+        private double missingMetadataFraction = 0.05;
+        private List<String> extensions = Arrays.asList("md", "txt");
+        private int medianBodyBytes = 512;
+        private double bodyBytesSigma = 1.0;
+        private long seed = 0;
+
+        public Config withNumEntries(int numEntries) {
+            this.numEntries = numEntries;
+            return this;
+        }
+
+        /**
+         * @param nameWords Words that entry names are made of, with the first being the most common
+         * @param maxNameWords Maximum number of words in an entry name
+         */
+        public Config withNameWords(List<String> nameWords, int maxNameWords) {
+            this.nameWords = new ArrayList<>(nameWords);
+            this.maxNameWords = maxNameWords;
+            return this;
+        }
+
+        /**
+         * @param tagVocabulary Tags to give entries, from most to least common
+         * @param zipfExponent Exponent of the Zipf distribution that tags are drawn from (the tag at rank k is used
+         *                     in proportion to 1/k^exponent, so 0 is uniform and higher is more skewed)
+         * @param maxTagsPerEntry Maximum number of tags an entry has (the number is uniform from 0 to this)
+         */
+        public Config withTags(List<String> tagVocabulary, double zipfExponent, int maxTagsPerEntry) {
+            this.tagVocabulary = new ArrayList<>(tagVocabulary);
+            this.tagZipfExponent = zipfExponent;
+            this.maxTagsPerEntry = maxTagsPerEntry;
+            return this;
+        }
+
+        /**
+         * @param timestampFormats Formats that timestamps are written in, chosen uniformly per entry
+         * @param first Earliest timestamp to give an entry
+         * @param last Latest timestamp to give an entry
+         */
+        public Config withTimestamps(List<String> timestampFormats, LocalDateTime first, LocalDateTime last) {
+            this.timestampFormats = new ArrayList<>(timestampFormats);
+            this.firstTimestamp = first;
+            this.lastTimestamp = last;
+            return this;
+        }
+
+        /**
+         * @param missingMetadataFraction Fraction of entries whose filename is just a name and extension
+         */
+        public Config withMissingMetadataFraction(double missingMetadataFraction) {
+            this.missingMetadataFraction = missingMetadataFraction;
+            return this;
+        }
+
+        /**
+         * @param extensions Extensions to give entries, chosen uniformly per entry
+         */
+        public Config withExtensions(List<String> extensions) {
+            this.extensions = new ArrayList<>(extensions);
+            return this;
+        }
+
+        /**
+         * @param medianBytes Median size of an entry's body, or 0 for every entry to be empty
+         * @param sigma Spread of the log-normal distribution that body sizes are drawn from
+         */
+        public Config withBodySizes(int medianBytes, double sigma) {
+            this.medianBodyBytes = medianBytes;
+            this.bodyBytesSigma = sigma;
+            return this;
+        }
+
+        public Config withSeed(long seed) {
+            this.seed = seed;
+            return this;
+        }
+
+        public List<String> getNameWords() {
+            return Collections.unmodifiableList(this.nameWords);
+        }
+
+        public List<String> getTagVocabulary() {
+            return Collections.unmodifiableList(this.tagVocabulary);
+        }
+    }
+
+    /**
+     * A generated journal, which is deleted when closed
+     */
+    public static class GeneratedJournal implements AutoCloseable {
+        private final Path dirpath;
+        private final List<String> filenames;
+        private final long totalBodyBytes;
+
+        private GeneratedJournal(Path dirpath, List<String> filenames, long totalBodyBytes) {
+            this.dirpath = dirpath;
+            this.filenames = filenames;
+            this.totalBodyBytes = totalBodyBytes;
+        }
+
+        public Path getDirpath() {
+            return dirpath;
+        }
+
+        public List<String> getFilenames() {
+            return Collections.unmodifiableList(this.filenames);
+        }
+
+        public long getTotalBodyBytes() {
+            return totalBodyBytes;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try (Stream<Path> paths = Files.list(this.dirpath)) {
+                for (Path path : (Iterable<Path>) paths::iterator) {
+                    Files.delete(path);
+                }
+            }
+            Files.delete(this.dirpath);
+        }
+    }
+
+    private JournalGenerator() {}
+
+    /**
+     * Generates a journal in a new temporary directory
+     * @param config Parameters of the journal
+     * @return The generated journal, which the caller must close to delete it
+     * @throws IOException if the journal couldn't be written
+     */
+    public static GeneratedJournal generate(Config config) throws IOException {
+        Path dirpath = Files.createTempDirectory("clijournal-generated");
+        try {
+            return generate(config, dirpath);
+        } catch (IOException | RuntimeException e) {
+            new GeneratedJournal(dirpath, Collections.emptyList(), 0).close();
+            throw e;
+        }
+    }
+
+    /**
+     * @param config Parameters of the journal
+     * @param dirpath Existing directory to generate the journal's entries in
+     * @return The generated journal
+     * @throws IOException if the journal couldn't be written
+     */
+    public static GeneratedJournal generate(Config config, Path dirpath) throws IOException {
+        Random random = new Random(config.seed);
+        double[] tagCdf = zipfCdf(config.tagVocabulary.size(), config.tagZipfExponent);
+        List<DateTimeFormatter> timestampFormatters = config.timestampFormats.stream()
+                .map(DateTimeFormatter::ofPattern)
+                .collect(Collectors.toList());
+        long timestampSpanSeconds = Duration.between(config.firstTimestamp, config.lastTimestamp).getSeconds();
+
+        // Filenames are drawn sequentially so they only depend on the seed, then written in parallel
+        List<String> filenames = new ArrayList<>(config.numEntries);
+        int[] bodySizes = new int[config.numEntries];
+        Set<String> usedFilenames = new HashSet<>(config.numEntries * 4 / 3 + 1);
+        for (int i = 0; i < config.numEntries; i++) {
+            String name = generateName(config, random);
+            String extension = config.extensions.get(random.nextInt(config.extensions.size()));
+
+            String filename;
+            if (random.nextDouble() < config.missingMetadataFraction) {
+                filename = name + "." + extension;
+            } else {
+                LocalDateTime timestamp = config.firstTimestamp.plusSeconds(
+                        (long) (random.nextDouble() * timestampSpanSeconds)
+                );
+                DateTimeFormatter formatter = timestampFormatters.get(random.nextInt(timestampFormatters.size()));
+                Set<String> tags = new TreeSet<>();
+                int numTags = random.nextInt(config.maxTagsPerEntry + 1);
+                for (int j = 0; j < numTags && !config.tagVocabulary.isEmpty(); j++) {
+                    tags.add(config.tagVocabulary.get(sampleRank(tagCdf, random)));
+                }
+                filename = name
+                        + EntryStore.METADATA_SEPARATOR + formatter.format(timestamp)
+                        + EntryStore.METADATA_SEPARATOR + String.join(EntryStore.TAG_SEPARATOR, tags)
+                        + "." + extension;
+            }
+            // Real journals do reuse names, but never whole filenames
+            if (!usedFilenames.add(filename)) {
+                filename = name + "-" + i + filename.substring(name.length());
+                usedFilenames.add(filename);
+            }
+            filenames.add(filename);
+
+            if (config.medianBodyBytes > 0) {
+                double bodyBytes = config.medianBodyBytes * Math.exp(config.bodyBytesSigma * random.nextGaussian());
+                bodySizes[i] = (int) Math.min(bodyBytes, MAX_BODY_BYTES);
+            }
+        }
+
+        try {
+            IntStream.range(0, config.numEntries).parallel().forEach(i -> {
+                try {
+                    Files.write(
+                            dirpath.resolve(filenames.get(i)),
+                            generateBody(bodySizes[i], new Random(config.seed + i))
+                    );
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return new GeneratedJournal(dirpath, filenames, Arrays.stream(bodySizes).asLongStream().sum());
+    }
+
+    private static String generateName(Config config, Random random) {
+        int numWords = 1 + random.nextInt(config.maxNameWords);
+        StringJoiner name = new StringJoiner("-");
+        for (int i = 0; i < numWords; i++) {
+            name.add(config.nameWords.get(random.nextInt(config.nameWords.size())));
+        }
+        return name.toString();
+    }
+
+    private static byte[] generateBody(int numBytes, Random random) {
+        StringBuilder body = new StringBuilder(numBytes + 16);
+        while (body.length() < numBytes) {
+            body.append(BODY_WORDS.get(random.nextInt(BODY_WORDS.size())));
+            body.append(random.nextInt(12) == 0 ? '\n' : ' ');
+        }
+        body.setLength(numBytes);
+        return body.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @return Cumulative probabilities of the ranks of a Zipf distribution
+     */
+    private static double[] zipfCdf(int numRanks, double exponent) {
+        double[] cdf = new double[numRanks];
+        double total = 0;
+        for (int rank = 0; rank < numRanks; rank++) {
+            total += 1 / Math.pow(rank + 1, exponent);
+            cdf[rank] = total;
+        }
+        for (int rank = 0; rank < numRanks; rank++) {
+            cdf[rank] /= total;
+        }
+        return cdf;
+    }
+
+    private static int sampleRank(double[] cdf, Random random) {
+        int idx = Arrays.binarySearch(cdf, random.nextDouble());
+        // A miss returns (-insertionPoint - 1), and the insertion point is the rank whose bucket the value fell in
+        int rank = idx >= 0 ? idx : -idx - 1;
+        return Math.min(rank, cdf.length - 1);
+    }
+}